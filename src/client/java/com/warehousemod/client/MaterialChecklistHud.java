@@ -0,0 +1,129 @@
+package com.warehousemod.client;
+
+import com.warehousemod.material.MaterialKeys;
+import com.warehousemod.network.MaterialChecklistPayload;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.render.RenderTickCounter;
+import net.minecraft.item.ItemStack;
+import net.minecraft.text.Text;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 屏幕左上角的材料清单
+ * 数据由服务器以物品ID和数量发送，名称和图标在客户端生成；排序只在数据变化时进行，不在每一帧重复计算
+ */
+public class MaterialChecklistHud {
+    private static final int MAX_ROWS = 10;
+    private static final int ROW_HEIGHT = 18;
+    private static final int COLOR_TITLE = 0xFFFF55;
+    private static final int COLOR_MISSING = 0xFF5555;
+    private static final int COLOR_ENOUGH = 0x55FF55;
+    private static final int COLOR_MORE = 0xAAAAAA;
+
+    private String title;
+    private int[] itemIds;
+    private int[] needed;
+    private int[] has;
+    private ItemStack[] icons;
+    private final Int2IntOpenHashMap indexOf = new Int2IntOpenHashMap();
+    // 按缺少数量排好序的下标
+    private Integer[] order;
+    private int missingKinds;
+
+    public MaterialChecklistHud() {
+        indexOf.defaultReturnValue(-1);
+    }
+
+    /**
+     * 应用服务器发送的清单，在客户端主线程上调用
+     */
+    public void apply(MaterialChecklistPayload payload) {
+        switch (payload.mode()) {
+            case FULL -> {
+                title = payload.title();
+                itemIds = payload.itemIds();
+                needed = payload.needed();
+                has = payload.has();
+                icons = new ItemStack[itemIds.length];
+                indexOf.clear();
+                for (int i = 0; i < itemIds.length; i++) {
+                    indexOf.put(itemIds[i], i);
+                    icons[i] = new ItemStack(MaterialKeys.item(itemIds[i]));
+                }
+            }
+            case DELTA -> {
+                if (itemIds == null) {
+                    return;
+                }
+                for (int i = 0; i < payload.itemIds().length; i++) {
+                    int index = indexOf.get(payload.itemIds()[i]);
+                    if (index >= 0) {
+                        has[index] = payload.has()[i];
+                    }
+                }
+            }
+            case CLEAR -> {
+                clear();
+                return;
+            }
+        }
+        sort();
+    }
+
+    public void clear() {
+        title = null;
+        itemIds = null;
+        needed = null;
+        has = null;
+        icons = null;
+        order = null;
+        indexOf.clear();
+    }
+
+    public void render(DrawContext context, RenderTickCounter tickCounter) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (order == null || client.options.hudHidden) {
+            return;
+        }
+        TextRenderer textRenderer = client.textRenderer;
+        int x = 4;
+        int y = 4;
+        context.drawTextWithShadow(textRenderer, Text.literal(title + "  缺少 " + missingKinds + "/" + itemIds.length), x, y, COLOR_TITLE);
+        y += 12;
+
+        int rows = Math.min(MAX_ROWS, order.length);
+        for (int row = 0; row < rows; row++) {
+            int i = order[row];
+            context.drawItem(icons[i], x, y);
+            Text line = icons[i].getName().copy().append(" " + has[i] + "/" + needed[i]);
+            context.drawTextWithShadow(textRenderer, line, x + 20, y + 4, has[i] < needed[i] ? COLOR_MISSING : COLOR_ENOUGH);
+            y += ROW_HEIGHT;
+        }
+        if (order.length > rows) {
+            context.drawTextWithShadow(textRenderer, Text.literal("... 还有 " + (order.length - rows) + " 种"), x, y + 2, COLOR_MORE);
+        }
+    }
+
+    /**
+     * 缺少最多的排在最前面，充足的排在最后
+     */
+    private void sort() {
+        Integer[] indices = new Integer[itemIds.length];
+        int missing = 0;
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+            if (has[i] < needed[i]) {
+                missing++;
+            }
+        }
+        Arrays.sort(indices, Comparator.<Integer>comparingLong(i -> (long) has[i] - needed[i])
+                .thenComparingInt(i -> -needed[i]));
+        order = indices;
+        missingKinds = missing;
+    }
+}
@@ -0,0 +1,40 @@
+package com.warehousemod.client;
+
+import com.warehousemod.network.MaterialChecklistPayload;
+import com.warehousemod.network.WarehouseUpdatePayload;
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
+import net.minecraft.screen.ScreenHandler;
+
+/**
+ * 客户端入口
+ * 没有安装模组的客户端也能正常使用仓库，只是界面更新改由原版逐个槽位同步
+ */
+public class WarehouseModClient implements ClientModInitializer {
+    private final MaterialChecklistHud checklistHud = new MaterialChecklistHud();
+
+    @Override
+    public void onInitializeClient() {
+        // 接收服务器每刻合并发送的仓库界面更新（在客户端主线程上执行）
+        ClientPlayNetworking.registerGlobalReceiver(WarehouseUpdatePayload.ID, (payload, context) -> {
+            ScreenHandler handler = context.player().currentScreenHandler;
+            if (handler == null || handler.syncId != payload.syncId()) {
+                // 界面已经关闭或换成了别的界面
+                return;
+            }
+            for (WarehouseUpdatePayload.SlotUpdate update : payload.slots()) {
+                // 槽位号来自网络，超出当前界面范围的更新直接忽略
+                if (update.slot() < handler.slots.size()) {
+                    handler.setStackInSlot(update.slot(), payload.revision(), update.stack());
+                }
+            }
+        });
+
+        // 材料清单：第一次收到完整清单，之后只收到数量变化
+        ClientPlayNetworking.registerGlobalReceiver(MaterialChecklistPayload.ID, (payload, context) -> checklistHud.apply(payload));
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> client.execute(checklistHud::clear));
+        HudRenderCallback.EVENT.register(checklistHud::render);
+    }
+}
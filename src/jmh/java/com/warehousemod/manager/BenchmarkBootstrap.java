@@ -0,0 +1,23 @@
+package com.warehousemod.manager;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+
+/**
+ * 基准测试使用的无头注册表初始化
+ * 只初始化原版注册表，不启动服务器，也不加载其他模组
+ */
+final class BenchmarkBootstrap {
+    private static boolean initialized;
+
+    private BenchmarkBootstrap() {
+    }
+
+    static synchronized void initialize() {
+        if (!initialized) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            initialized = true;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.config.WarehouseConfig;
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.schematic.LegacySchematicFormat;
+import com.warehousemod.schematic.LitematicaSchematicFormat;
+import com.warehousemod.schematic.ParallelBlockCounter;
+import com.warehousemod.schematic.SpongeSchematicFormat;
+import com.warehousemod.schematic.StructureTemplateFormat;
+import net.minecraft.nbt.NbtCompound;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各个内置原理图格式的基准测试
+ * 使用确定性的合成原理图，尺寸从 1K 到 50M 方块，调色板从 2 到 4096 种，
+ * 组合较多，运行时可以用 -p size=... -p paletteSize=... 只选择一部分
+ *
+ * 次要指标 blocks 是每秒统计的方块数，ns/block = 1e9 / blocks；配合 -prof gc 查看分配速率
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class SchematicParseBenchmark {
+
+    /**
+     * 每次调用统计的方块数，JMH 按秒汇总
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class BlockCounter {
+        public long blocks;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            blocks = 0;
+        }
+    }
+
+    // 10^3, 100^3, 200^3 和 500x200x500 = 5000 万方块
+    @Param({"10x10x10", "100x100x100", "200x200x200", "500x200x500"})
+    public String size;
+
+    @Param({"2", "16", "256", "4096"})
+    public int paletteSize;
+
+    private long volume;
+    private ParallelBlockCounter blockCounter;
+    private final LitematicaSchematicFormat litematicaFormat = new LitematicaSchematicFormat();
+    private final SpongeSchematicFormat spongeFormat = new SpongeSchematicFormat();
+    private final LegacySchematicFormat legacyFormat = new LegacySchematicFormat();
+    private final StructureTemplateFormat structureFormat = new StructureTemplateFormat();
+    private NbtCompound litematica;
+    private NbtCompound sponge;
+    private NbtCompound legacy;
+    private NbtCompound structure;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkBootstrap.initialize();
+        WarehouseConfig config = WarehouseConfig.get();
+        blockCounter = new ParallelBlockCounter(config.parseParallelism, config.parseParallelMinBlocks);
+
+        int[] dimensions = SyntheticSchematics.parseSize(size);
+        volume = SyntheticSchematics.volume(dimensions);
+        litematica = SyntheticSchematics.litematica(dimensions, paletteSize);
+        sponge = SyntheticSchematics.sponge(dimensions, paletteSize);
+        legacy = SyntheticSchematics.legacy(dimensions, paletteSize);
+        // 原版结构每个方块是一个复合标签，只生成不超过结构方块上限的尺寸
+        structure = SyntheticSchematics.structure(dimensions, paletteSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        blockCounter.close();
+    }
+
+    @Benchmark
+    public MaterialCounts litematicaFormat(BlockCounter counter) throws IOException {
+        counter.blocks += volume;
+        return litematicaFormat.count(litematica, blockCounter);
+    }
+
+    @Benchmark
+    public MaterialCounts modernSchematic(BlockCounter counter) throws IOException {
+        counter.blocks += volume;
+        return spongeFormat.count(sponge, blockCounter);
+    }
+
+    @Benchmark
+    public MaterialCounts legacySchematic(BlockCounter counter) throws IOException {
+        counter.blocks += volume;
+        return legacyFormat.count(legacy, blockCounter);
+    }
+
+    @Benchmark
+    public MaterialCounts structureTemplate(BlockCounter counter) throws IOException {
+        counter.blocks += SyntheticSchematics.structureVolume(SyntheticSchematics.parseSize(size));
+        return structureFormat.count(structure, blockCounter);
+    }
+}
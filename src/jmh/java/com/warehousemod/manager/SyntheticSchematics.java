@@ -0,0 +1,226 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.schematic.PackedBlockStates;
+import net.minecraft.block.Block;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtInt;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.Registries;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 生成确定性的合成原理图
+ * 同样的参数每次生成完全相同的数据；调色板条目超过方块种类数时用不同的方块状态属性区分
+ */
+final class SyntheticSchematics {
+    private static final long SEED = 0x5eed_5eedL;
+    private static final int STRUCTURE_MAX_SIZE = 48;
+
+    private SyntheticSchematics() {
+    }
+
+    /**
+     * 解析 "长x高x宽" 形式的尺寸
+     */
+    static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    }
+
+    static long volume(int[] size) {
+        return (long) size[0] * size[1] * size[2];
+    }
+
+    /**
+     * 单个区域的 Litematica 原理图
+     */
+    static NbtCompound litematica(int[] size, int paletteSize) {
+        List<String> names = blockNames(paletteSize);
+        NbtList palette = new NbtList();
+        for (int i = 0; i < paletteSize; i++) {
+            NbtCompound state = new NbtCompound();
+            state.putString("Name", names.get(i % names.size()));
+            if (i >= names.size()) {
+                NbtCompound properties = new NbtCompound();
+                properties.putString("variant", Integer.toString(i / names.size()));
+                state.put("Properties", properties);
+            }
+            palette.add(state);
+        }
+
+        long volume = volume(size);
+        int bits = PackedBlockStates.bitsPerEntry(paletteSize);
+        long[] data = new long[(int) PackedBlockStates.requiredLongs(volume, bits)];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (long i = 0; i < volume; i++) {
+            long value = random.nextInt(paletteSize);
+            long bit = i * bits;
+            int word = (int) (bit >>> 6);
+            int offset = (int) (bit & 63);
+            data[word] |= value << offset;
+            if (offset + bits > 64) {
+                data[word + 1] |= value >>> (64 - offset);
+            }
+        }
+
+        NbtCompound region = new NbtCompound();
+        region.put("Position", vector(0, 0, 0));
+        region.put("Size", vector(size[0], size[1], size[2]));
+        region.put("BlockStatePalette", palette);
+        region.putLongArray("BlockStates", data);
+        NbtCompound regions = new NbtCompound();
+        regions.put("Main", region);
+
+        NbtCompound metadata = new NbtCompound();
+        metadata.putString("Author", "benchmark");
+        metadata.putString("Description", "synthetic");
+        NbtCompound root = new NbtCompound();
+        root.put("Metadata", metadata);
+        root.put("Regions", regions);
+        return root;
+    }
+
+    /**
+     * Sponge v2 原理图，BlockData 为 VarInt 编码
+     */
+    static NbtCompound sponge(int[] size, int paletteSize) {
+        List<String> names = blockNames(paletteSize);
+        NbtCompound palette = new NbtCompound();
+        for (int i = 0; i < paletteSize; i++) {
+            String name = names.get(i % names.size());
+            palette.putInt(i >= names.size() ? name + "[variant=" + i / names.size() + "]" : name, i);
+        }
+
+        long volume = volume(size);
+        ByteArrayOutputStream data = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, volume * (paletteSize > 128 ? 2 : 1)));
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (long i = 0; i < volume; i++) {
+            int value = random.nextInt(paletteSize);
+            while ((value & ~0x7F) != 0) {
+                data.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data.write(value);
+        }
+
+        NbtCompound root = new NbtCompound();
+        root.putInt("Version", 2);
+        root.putShort("Width", (short) size[0]);
+        root.putShort("Height", (short) size[1]);
+        root.putShort("Length", (short) size[2]);
+        root.put("Palette", palette);
+        root.putByteArray("BlockData", data.toByteArray());
+        return root;
+    }
+
+    /**
+     * 旧版 MCEdit 原理图，调色板由 (方块ID, 数据值) 组合而成，最多 4096 种
+     */
+    static NbtCompound legacy(int[] size, int paletteSize) {
+        int combinations = Math.min(paletteSize, 255 * 16);
+        int volume = Math.toIntExact(volume(size));
+        byte[] blocks = new byte[volume];
+        byte[] data = new byte[volume];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < volume; i++) {
+            // 跳过方块ID 0（空气）
+            int key = random.nextInt(combinations) + 16;
+            blocks[i] = (byte) (key >> 4);
+            data[i] = (byte) (key & 0xF);
+        }
+
+        NbtCompound root = new NbtCompound();
+        root.putShort("Width", (short) size[0]);
+        root.putShort("Height", (short) size[1]);
+        root.putShort("Length", (short) size[2]);
+        root.putString("Materials", "Alpha");
+        root.putByteArray("Blocks", blocks);
+        root.putByteArray("Data", data);
+        return root;
+    }
+
+    /**
+     * 原版结构的尺寸，每个方向最多 48 格（结构方块的上限）
+     */
+    static long structureVolume(int[] size) {
+        return (long) Math.min(size[0], STRUCTURE_MAX_SIZE) * Math.min(size[1], STRUCTURE_MAX_SIZE) * Math.min(size[2], STRUCTURE_MAX_SIZE);
+    }
+
+    /**
+     * 原版结构方块保存的结构，尺寸超过结构方块的上限时截断
+     */
+    static NbtCompound structure(int[] size, int paletteSize) {
+        List<String> names = blockNames(paletteSize);
+        NbtList palette = new NbtList();
+        for (int i = 0; i < paletteSize; i++) {
+            NbtCompound state = new NbtCompound();
+            state.putString("Name", names.get(i % names.size()));
+            if (i >= names.size()) {
+                NbtCompound properties = new NbtCompound();
+                properties.putString("variant", Integer.toString(i / names.size()));
+                state.put("Properties", properties);
+            }
+            palette.add(state);
+        }
+
+        int sizeX = Math.min(size[0], STRUCTURE_MAX_SIZE);
+        int sizeY = Math.min(size[1], STRUCTURE_MAX_SIZE);
+        int sizeZ = Math.min(size[2], STRUCTURE_MAX_SIZE);
+        NbtList blocks = new NbtList();
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int y = 0; y < sizeY; y++) {
+            for (int z = 0; z < sizeZ; z++) {
+                for (int x = 0; x < sizeX; x++) {
+                    NbtList pos = new NbtList();
+                    pos.add(NbtInt.of(x));
+                    pos.add(NbtInt.of(y));
+                    pos.add(NbtInt.of(z));
+                    NbtCompound block = new NbtCompound();
+                    block.put("pos", pos);
+                    block.putInt("state", random.nextInt(paletteSize));
+                    blocks.add(block);
+                }
+            }
+        }
+
+        NbtList sizeList = new NbtList();
+        sizeList.add(NbtInt.of(sizeX));
+        sizeList.add(NbtInt.of(sizeY));
+        sizeList.add(NbtInt.of(sizeZ));
+        NbtCompound root = new NbtCompound();
+        root.putInt("DataVersion", 3953);
+        root.put("size", sizeList);
+        root.put("palette", palette);
+        root.put("blocks", blocks);
+        root.put("entities", new NbtList());
+        return root;
+    }
+
+    /**
+     * 按注册顺序取有物品形式的方块，保证每次运行的调色板相同
+     */
+    private static List<String> blockNames(int limit) {
+        List<String> names = new ArrayList<>();
+        for (Block block : Registries.BLOCK) {
+            if (block.asItem() != net.minecraft.item.Items.AIR) {
+                names.add(Registries.BLOCK.getId(block).toString());
+                if (names.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return names;
+    }
+
+    private static NbtCompound vector(int x, int y, int z) {
+        NbtCompound vector = new NbtCompound();
+        vector.putInt("x", x);
+        vector.putInt("y", y);
+        vector.putInt("z", z);
+        return vector;
+    }
+}
@@ -0,0 +1,193 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.storage.WarehouseStorage;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.ContainerComponent;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.registry.BuiltinRegistries;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 仓库物品统计和保存/加载的基准测试，用于给服务器线程上的工作设定预算
+ * 使用无头注册表，不需要启动服务器；配合 -prof gc 查看每次操作分配的字节数（gc.alloc.rate.norm）
+ *
+ * aggregate* 对应旧版 getWarehouseItems 的全量统计：冷缓存每次都重新展开潜影盒，热缓存与服务器长期运行时相同
+ * save/load 对应 saveWarehouse/loadWarehouse：生成完整快照并写入，以及从快照重建仓库（包括物品统计索引）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WarehouseBenchmark {
+    private static final long SEED = 0x3a7e_400dL;
+    private static final int SHULKER_SLOTS = 27;
+
+    /**
+     * empty: 空仓库；full: 每种物品各一组；shulkers: 装满物品的潜影盒；nested: 装满潜影盒的潜影盒
+     */
+    @Param({"empty", "full", "shulkers", "nested"})
+    public String contents;
+
+    @Param({"1000"})
+    public int variants;
+
+    private RegistryWrapper.WrapperLookup registries;
+    private ScheduledExecutorService writer;
+    private Path directory;
+    private Path file;
+    private Warehouse warehouse;
+    private ItemStackCounter warmCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkBootstrap.initialize();
+        registries = BuiltinRegistries.createWrapperLookup();
+        writer = Executors.newSingleThreadScheduledExecutor();
+        directory = Files.createTempDirectory("warehouse-bench");
+        file = directory.resolve("bench.dat");
+
+        warehouse = newWarehouse();
+        fill(warehouse.getStorage());
+        warehouse.save();
+        // 预热潜影盒缓存
+        warmCounter = new ItemStackCounter();
+        aggregate(warmCounter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public MaterialCounts aggregateCold() {
+        return aggregate(new ItemStackCounter());
+    }
+
+    @Benchmark
+    public MaterialCounts aggregateWarm() {
+        return aggregate(warmCounter);
+    }
+
+    @Benchmark
+    public MaterialCounts getItems() {
+        return warehouse.getItems();
+    }
+
+    @Benchmark
+    public Path save() throws IOException {
+        Path target = directory.resolve("save.dat");
+        new WarehouseJournal(target, Long.MAX_VALUE).writeSnapshot(warehouse.createSnapshot());
+        return target;
+    }
+
+    @Benchmark
+    public Warehouse load() {
+        return newWarehouse();
+    }
+
+    @Benchmark
+    public Warehouse roundTrip() throws IOException {
+        new WarehouseJournal(file, Long.MAX_VALUE).writeSnapshot(warehouse.createSnapshot());
+        return newWarehouse();
+    }
+
+    private MaterialCounts aggregate(ItemStackCounter counter) {
+        WarehouseItemIndex index = new WarehouseItemIndex(warehouse.getStorage(), counter::count);
+        index.close();
+        return index.getTotals();
+    }
+
+    private Warehouse newWarehouse() {
+        return new Warehouse("bench", file, registries, Runnable::run, writer, new ItemStackCounter()::count);
+    }
+
+    private void fill(WarehouseStorage storage) {
+        List<Item> items = new ArrayList<>();
+        for (Item item : Registries.ITEM) {
+            if (item != Items.AIR && !item.getTranslationKey().contains("shulker_box")) {
+                items.add(item);
+            }
+        }
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        switch (contents) {
+            case "empty" -> {
+            }
+            case "full" -> {
+                for (int i = 0; i < Math.min(variants, items.size()); i++) {
+                    Item item = items.get(i);
+                    storage.insert(ItemVariant.of(item), item.getMaxCount());
+                }
+            }
+            case "shulkers" -> {
+                // 内容各不相同，每个潜影盒都是一种物品
+                for (int i = 0; i < variants; i++) {
+                    storage.insert(ItemVariant.of(shulker(randomStacks(items, random))), 1);
+                }
+            }
+            case "nested" -> {
+                for (int i = 0; i < variants; i++) {
+                    List<ItemStack> inner = new ArrayList<>(SHULKER_SLOTS);
+                    for (int slot = 0; slot < SHULKER_SLOTS; slot++) {
+                        inner.add(shulker(randomStacks(items, random)));
+                    }
+                    storage.insert(ItemVariant.of(shulker(inner)), 1);
+                }
+            }
+            default -> throw new IllegalArgumentException("未知的仓库内容: " + contents);
+        }
+    }
+
+    private static List<ItemStack> randomStacks(List<Item> items, SplittableRandom random) {
+        List<ItemStack> stacks = new ArrayList<>(SHULKER_SLOTS);
+        for (int slot = 0; slot < SHULKER_SLOTS; slot++) {
+            Item item = items.get(random.nextInt(items.size()));
+            stacks.add(new ItemStack(item, 1 + random.nextInt(item.getMaxCount())));
+        }
+        return stacks;
+    }
+
+    private static ItemStack shulker(List<ItemStack> stacks) {
+        ItemStack shulker = new ItemStack(Items.SHULKER_BOX);
+        shulker.set(DataComponentTypes.CONTAINER, ContainerComponent.fromStacks(stacks));
+        return shulker;
+    }
+}
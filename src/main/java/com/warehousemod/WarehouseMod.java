@@ -1,11 +1,18 @@
 package com.warehousemod;
 
+import com.warehousemod.config.WarehouseConfig;
 import com.warehousemod.manager.SchematicManager;
 import com.warehousemod.manager.WarehouseManager;
+import com.warehousemod.command.MaterialCalculations;
+import com.warehousemod.command.MaterialChecklists;
+import com.warehousemod.command.MaterialReport;
 import com.warehousemod.command.WarehouseCommands;
+import com.warehousemod.network.WarehouseNetworkHandler;
+import com.warehousemod.schematic.SchematicFormats;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import org.slf4j.Logger;
@@ -23,6 +30,9 @@ public class WarehouseMod implements ModInitializer {
     public void onInitialize() {
         LOGGER.info("初始化公共仓库模组");
         LOGGER.info("当前环境: {}", FabricLoader.getInstance().getEnvironmentType());
+        WarehouseConfig.load(FabricLoader.getInstance().getConfigDir());
+        WarehouseNetworkHandler.register();
+        SchematicFormats.loadEntrypoints();
 
         // 注册命令
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
@@ -33,7 +43,13 @@ public class WarehouseMod implements ModInitializer {
         // 使用事件系统初始化管理器
         ServerLifecycleEvents.SERVER_STARTING.register(server -> {
             LOGGER.info("服务器启动中，初始化仓库管理器");
+            if (warehouseManager != null) {
+                warehouseManager.close();
+            }
             warehouseManager = new WarehouseManager(server);
+            if (schematicManager != null) {
+                schematicManager.close();
+            }
             schematicManager = new SchematicManager(server);
             LOGGER.info("仓库管理器已初始化");
         });
@@ -42,17 +58,30 @@ public class WarehouseMod implements ModInitializer {
             LOGGER.info("服务器已启动，仓库管理器状态: {}", warehouseManager != null ? "已初始化" : "未初始化");
         });
 
-        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
             if (warehouseManager != null) {
-                warehouseManager.saveWarehouse();
-                LOGGER.info("服务器关闭，仓库数据已保存");
+                warehouseManager.tick();
             }
+            MaterialChecklists.tick(server);
         });
 
+        // 玩家离开时丢弃缓存的材料报告和清单
         ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            MaterialReport.remove(handler.getPlayer().getUuid());
+            MaterialChecklists.remove(handler.getPlayer().getUuid());
+        });
+
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            MaterialCalculations.shutdown();
+            MaterialReport.clear();
+            MaterialChecklists.clear();
             if (warehouseManager != null) {
-                warehouseManager.saveWarehouse();
-                LOGGER.info("玩家离开，仓库数据已保存");
+                warehouseManager.close();
+                LOGGER.info("服务器关闭，仓库数据已保存");
+            }
+            if (schematicManager != null) {
+                schematicManager.close();
+                schematicManager = null;
             }
         });
     }
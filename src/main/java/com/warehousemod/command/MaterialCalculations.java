@@ -0,0 +1,215 @@
+package com.warehousemod.command;
+
+import com.warehousemod.WarehouseMod;
+import com.warehousemod.config.WarehouseConfig;
+import com.warehousemod.material.MaterialCounts;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在独立线程池中解析原理图，避免阻塞服务器主线程
+ * 同时进行的计算不超过 calculateThreads 个，其余按提交顺序排队；每个玩家同时只能有一个计算，
+ * 因此排队是按玩家轮流的，一个玩家不会占满队列。超时从开始解析时计算，超时或取消时会中断解析线程
+ */
+public class MaterialCalculations {
+
+    /**
+     * 提交结果
+     *
+     * @param result   解析结果
+     * @param started  开始解析时完成
+     * @param position 提交时在队列中的位置（从 1 开始），0 表示已经开始
+     */
+    public record Submission(CompletableFuture<MaterialCounts> result, CompletableFuture<Void> started, int position) {
+    }
+
+    private static final class Job {
+        private final UUID playerId;
+        private final String schematicName;
+        private final CompletableFuture<MaterialCounts> result = new CompletableFuture<>();
+        private final CompletableFuture<Void> started = new CompletableFuture<>();
+        // 正在执行这个计算的线程，由 job 自身的锁保护
+        private Thread worker;
+
+        private Job(UUID playerId, String schematicName) {
+            this.playerId = playerId;
+            this.schematicName = schematicName;
+        }
+    }
+
+    private static final Map<UUID, Job> IN_FLIGHT = new ConcurrentHashMap<>();
+    // 等待开始的计算，以下字段都由类锁保护
+    private static final Deque<Job> QUEUE = new ArrayDeque<>();
+    private static int running;
+    private static ExecutorService executor;
+
+    /**
+     * 提交解析任务，玩家已有进行中或排队中的计算时返回 null
+     *
+     * @throws RejectedExecutionException 排队的计算已达上限
+     */
+    public static synchronized Submission submit(UUID playerId, String schematicName) {
+        if (IN_FLIGHT.containsKey(playerId)) {
+            return null;
+        }
+        WarehouseConfig config = WarehouseConfig.get();
+        if (running >= config.calculateThreads && QUEUE.size() >= config.calculateMaxQueued) {
+            throw new RejectedExecutionException("计算队列已满（" + QUEUE.size() + " 个排队中），请稍后再试");
+        }
+
+        Job job = new Job(playerId, schematicName);
+        IN_FLIGHT.put(playerId, job);
+        QUEUE.addLast(job);
+        job.result.whenComplete((materials, error) -> finished(job, error));
+        dispatch();
+        return new Submission(job.result, job.started, positionOf(job));
+    }
+
+    /**
+     * 取消玩家进行中或排队中的计算
+     */
+    public static boolean cancel(UUID playerId) {
+        Job job = IN_FLIGHT.get(playerId);
+        if (job == null) {
+            return false;
+        }
+        return job.result.cancel(false);
+    }
+
+    public static boolean isRunning(UUID playerId) {
+        return IN_FLIGHT.containsKey(playerId);
+    }
+
+    /**
+     * 玩家的计算在队列中的位置（从 1 开始），已经开始时返回 0，没有计算时返回 -1
+     */
+    public static synchronized int queuePosition(UUID playerId) {
+        Job job = IN_FLIGHT.get(playerId);
+        return job == null ? -1 : positionOf(job);
+    }
+
+    public static synchronized int runningCount() {
+        return running;
+    }
+
+    public static synchronized int queuedCount() {
+        return QUEUE.size();
+    }
+
+    /**
+     * 取出异步异常的实际原因
+     */
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    public static synchronized void shutdown() {
+        IN_FLIGHT.values().forEach(job -> job.result.cancel(false));
+        IN_FLIGHT.clear();
+        // 运行中的线程被中断后会自己减少 running
+        QUEUE.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 在有空闲线程时按顺序开始排队的计算
+     */
+    private static synchronized void dispatch() {
+        WarehouseConfig config = WarehouseConfig.get();
+        while (running < config.calculateThreads && !QUEUE.isEmpty()) {
+            Job job = QUEUE.pollFirst();
+            if (job.result.isDone()) {
+                // 排队时已被取消
+                continue;
+            }
+            running++;
+            job.started.complete(null);
+            job.result.orTimeout(config.calculateTimeoutSeconds, TimeUnit.SECONDS);
+            executor().execute(() -> run(job));
+        }
+    }
+
+    private static void run(Job job) {
+        try {
+            synchronized (job) {
+                if (job.result.isDone()) {
+                    // 开始之前已经超时或被取消
+                    return;
+                }
+                job.worker = Thread.currentThread();
+            }
+            job.result.complete(WarehouseMod.schematicManager.getSchematicMaterials(job.schematicName));
+        } catch (Throwable t) {
+            job.result.completeExceptionally(t);
+        } finally {
+            synchronized (job) {
+                job.worker = null;
+                // 清除中断标记，线程继续用于下一个计算
+                Thread.interrupted();
+            }
+            // 解析线程返回后才开始下一个计算。读取 NBT 和统计方块时会检查中断，被取消的解析会尽快返回；
+            // 通过 Litematica API 解析时无法中断，需要等它自己结束，这段时间里这个线程仍然被占用
+            synchronized (MaterialCalculations.class) {
+                running--;
+                dispatch();
+            }
+        }
+    }
+
+    private static void finished(Job job, Throwable error) {
+        IN_FLIGHT.remove(job.playerId, job);
+        if (error == null) {
+            return;
+        }
+        synchronized (MaterialCalculations.class) {
+            QUEUE.remove(job);
+        }
+        // 超时或取消时中断仍在运行的解析
+        synchronized (job) {
+            if (job.worker != null) {
+                job.worker.interrupt();
+            }
+        }
+    }
+
+    private static int positionOf(Job job) {
+        int position = 1;
+        for (Job queued : QUEUE) {
+            if (queued == job) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(WarehouseConfig.get().calculateThreads, runnable -> {
+                Thread thread = new Thread(runnable, "warehousemod-calculate-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
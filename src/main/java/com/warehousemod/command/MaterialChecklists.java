@@ -0,0 +1,139 @@
+package com.warehousemod.command;
+
+import com.warehousemod.WarehouseMod;
+import com.warehousemod.manager.Warehouse;
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.network.MaterialChecklistPayload;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 把材料报告以清单的形式显示在装了模组的客户端屏幕上
+ * 先发送一次完整的清单，之后仓库数量变化时只发送变化的物品
+ */
+public class MaterialChecklists {
+
+    private static final class Checklist {
+        private final String warehouseName;
+        private final int[] itemIds;
+        // 客户端当前显示的数量
+        private final int[] sentHas;
+        // 上次对比时的仓库实例，弱引用不会阻止卸载后的仓库被回收
+        private WeakReference<Warehouse> warehouse;
+        private int revision;
+
+        Checklist(String warehouseName, int[] itemIds, int[] sentHas) {
+            this.warehouseName = warehouseName;
+            this.itemIds = itemIds;
+            this.sentHas = sentHas;
+        }
+    }
+
+    // 只在服务器线程访问
+    private static final Map<UUID, Checklist> CHECKLISTS = new HashMap<>();
+
+    /**
+     * 客户端是否能显示清单
+     */
+    public static boolean canShow(ServerPlayerEntity player) {
+        return ServerPlayNetworking.canSend(player, MaterialChecklistPayload.ID);
+    }
+
+    /**
+     * 把报告作为清单发送给玩家，之后自动推送仓库数量的变化
+     *
+     * @return 客户端没有安装模组时返回 false
+     */
+    public static boolean show(ServerPlayerEntity player, MaterialReport report, Warehouse warehouse) {
+        if (!canShow(player)) {
+            return false;
+        }
+        int[] itemIds = report.itemIds();
+        Checklist checklist = new Checklist(report.warehouseName(), itemIds, new int[itemIds.length]);
+        MaterialCounts items = warehouse.getItems();
+        for (int i = 0; i < itemIds.length; i++) {
+            checklist.sentHas[i] = items.get(itemIds[i]);
+        }
+        checklist.warehouse = new WeakReference<>(warehouse);
+        checklist.revision = warehouse.getItemsRevision();
+        CHECKLISTS.put(player.getUuid(), checklist);
+
+        String title = report.schematicName() + " @ " + report.warehouseName();
+        ServerPlayNetworking.send(player, MaterialChecklistPayload.full(title, itemIds, report.needed(), checklist.sentHas.clone()));
+        return true;
+    }
+
+    /**
+     * 关闭玩家的清单
+     */
+    public static boolean hide(ServerPlayerEntity player) {
+        if (CHECKLISTS.remove(player.getUuid()) == null) {
+            return false;
+        }
+        if (canShow(player)) {
+            ServerPlayNetworking.send(player, MaterialChecklistPayload.clear());
+        }
+        return true;
+    }
+
+    public static void remove(UUID playerId) {
+        CHECKLISTS.remove(playerId);
+    }
+
+    public static void clear() {
+        CHECKLISTS.clear();
+    }
+
+    /**
+     * 每刻结束时调用一次，仓库统计没有变化时不做任何计算
+     */
+    public static void tick(MinecraftServer server) {
+        if (CHECKLISTS.isEmpty() || WarehouseMod.warehouseManager == null) {
+            return;
+        }
+
+        Iterator<Map.Entry<UUID, Checklist>> iterator = CHECKLISTS.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Checklist> entry = iterator.next();
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(entry.getKey());
+            if (player == null) {
+                iterator.remove();
+                continue;
+            }
+
+            Checklist checklist = entry.getValue();
+            // 没有加载的仓库不会变化；重新加载后是一个新的实例，需要重新对比
+            Warehouse warehouse = WarehouseMod.warehouseManager.getLoadedWarehouse(checklist.warehouseName);
+            if (warehouse == null || (warehouse == checklist.warehouse.get() && warehouse.getItemsRevision() == checklist.revision)) {
+                continue;
+            }
+            if (warehouse != checklist.warehouse.get()) {
+                checklist.warehouse = new WeakReference<>(warehouse);
+            }
+            checklist.revision = warehouse.getItemsRevision();
+
+            MaterialCounts items = warehouse.getItems();
+            IntArrayList changedIds = new IntArrayList();
+            IntArrayList changedHas = new IntArrayList();
+            for (int i = 0; i < checklist.itemIds.length; i++) {
+                int has = items.get(checklist.itemIds[i]);
+                if (has != checklist.sentHas[i]) {
+                    checklist.sentHas[i] = has;
+                    changedIds.add(checklist.itemIds[i]);
+                    changedHas.add(has);
+                }
+            }
+            if (!changedIds.isEmpty()) {
+                ServerPlayNetworking.send(player, MaterialChecklistPayload.delta(changedIds.toIntArray(), changedHas.toIntArray()));
+            }
+        }
+    }
+}
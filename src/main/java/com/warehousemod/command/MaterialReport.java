@@ -0,0 +1,251 @@
+package com.warehousemod.command;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+import net.minecraft.text.ClickEvent;
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一次 /c 计算的结果
+ * 只保存物品ID和数量，生成后按玩家缓存，翻页、筛选和排序都直接使用缓存，不会重新计算；
+ * 每一页合并成一条聊天消息发送
+ */
+public class MaterialReport {
+    public static final int PAGE_SIZE = 8;
+
+    /**
+     * 材料的排列顺序
+     */
+    public enum Sort {
+        // 缺少数量从多到少，充足的排在最后
+        SHORTFALL("按缺口"),
+        // 按物品ID排序
+        NAME("按名称");
+
+        private final String label;
+
+        Sort(String label) {
+            this.label = label;
+        }
+    }
+
+    // 每个玩家最近一次的报告（只在服务器线程访问）
+    private static final Map<UUID, MaterialReport> REPORTS = new HashMap<>();
+
+    private final String schematicName;
+    private final String warehouseName;
+    private final int[] itemIds;
+    private final int[] needed;
+    private final int[] has;
+    private final int missingKinds;
+    private boolean missingOnly;
+    private Sort sort = Sort.SHORTFALL;
+    // 当前筛选和排序下要显示的材料下标，切换时才重新生成
+    private int[] order;
+
+    private MaterialReport(String schematicName, String warehouseName, int[] itemIds, int[] needed, int[] has) {
+        this.schematicName = schematicName;
+        this.warehouseName = warehouseName;
+        this.itemIds = itemIds;
+        this.needed = needed;
+        this.has = has;
+        int missing = 0;
+        for (int i = 0; i < itemIds.length; i++) {
+            if (needed[i] > has[i]) {
+                missing++;
+            }
+        }
+        this.missingKinds = missing;
+    }
+
+    /**
+     * 对比原理图材料和仓库中的物品，仓库数量取生成报告时的值
+     */
+    public static MaterialReport create(String schematicName, String warehouseName, MaterialCounts schematicMaterials, MaterialCounts warehouseItems) {
+        int size = schematicMaterials.size();
+        int[] itemIds = new int[size];
+        int[] needed = new int[size];
+        int[] has = new int[size];
+        int[] next = {0};
+        schematicMaterials.forEach((itemId, count) -> {
+            int i = next[0]++;
+            itemIds[i] = itemId;
+            needed[i] = count;
+            has[i] = warehouseItems.get(itemId);
+        });
+        return new MaterialReport(schematicName, warehouseName, itemIds, needed, has);
+    }
+
+    public static void put(UUID playerId, MaterialReport report) {
+        REPORTS.put(playerId, report);
+    }
+
+    public static MaterialReport get(UUID playerId) {
+        return REPORTS.get(playerId);
+    }
+
+    public static void remove(UUID playerId) {
+        REPORTS.remove(playerId);
+    }
+
+    public static void clear() {
+        REPORTS.clear();
+    }
+
+    String schematicName() {
+        return schematicName;
+    }
+
+    String warehouseName() {
+        return warehouseName;
+    }
+
+    int[] itemIds() {
+        return itemIds;
+    }
+
+    int[] needed() {
+        return needed;
+    }
+
+    public int getMissingKinds() {
+        return missingKinds;
+    }
+
+    public void setMissingOnly(boolean missingOnly) {
+        if (this.missingOnly != missingOnly) {
+            this.missingOnly = missingOnly;
+            order = null;
+        }
+    }
+
+    public void setSort(Sort sort) {
+        if (this.sort != sort) {
+            this.sort = sort;
+            order = null;
+        }
+    }
+
+    public int pageCount() {
+        return Math.max(1, (order().length + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * 生成一页报告，页码从 1 开始，超出范围时显示最后一页
+     */
+    public Text render(int page) {
+        int[] order = order();
+        int pages = pageCount();
+        page = Math.max(1, Math.min(page, pages));
+
+        MutableText text = Text.literal("=== 材料计算报告 ===").formatted(Formatting.GOLD, Formatting.BOLD);
+        text.append(Text.literal("\n原理图: " + schematicName + "  仓库: " + warehouseName).formatted(Formatting.GREEN));
+        text.append(Text.literal("\n材料种类: " + itemIds.length + "，缺少: " + missingKinds).formatted(Formatting.YELLOW));
+
+        // 筛选和排序开关，当前选中的不能点击
+        text.append(Text.literal("\n"));
+        text.append(toggle("全部", !missingOnly, "/warehouse filter all"));
+        text.append(Text.literal(" "));
+        text.append(toggle("仅缺少", missingOnly, "/warehouse filter missing"));
+        text.append(Text.literal("  "));
+        text.append(toggle(Sort.SHORTFALL.label, sort == Sort.SHORTFALL, "/warehouse sort shortfall"));
+        text.append(Text.literal(" "));
+        text.append(toggle(Sort.NAME.label, sort == Sort.NAME, "/warehouse sort name"));
+
+        int start = (page - 1) * PAGE_SIZE;
+        int end = Math.min(order.length, start + PAGE_SIZE);
+        for (int i = start; i < end; i++) {
+            text.append(Text.literal("\n"));
+            text.append(line(order[i]));
+        }
+        if (order.length == 0) {
+            text.append(Text.literal(missingOnly ? "\n✓ 所有材料都充足！" : "\n原理图中没有材料").formatted(Formatting.DARK_GREEN));
+        }
+
+        // 翻页
+        text.append(Text.literal("\n"));
+        text.append(page > 1 ? link("[上一页]", "/warehouse page " + (page - 1)) : Text.literal("[上一页]").formatted(Formatting.DARK_GRAY));
+        text.append(Text.literal(" 第 " + page + "/" + pages + " 页 ").formatted(Formatting.GRAY));
+        text.append(page < pages ? link("[下一页]", "/warehouse page " + (page + 1)) : Text.literal("[下一页]").formatted(Formatting.DARK_GRAY));
+        text.append(Text.literal("  "));
+        text.append(link("[重新计算]", "/c " + quote(schematicName) + " " + warehouseName));
+        return text;
+    }
+
+    /**
+     * 一行摘要，客户端显示清单时代替完整的报告
+     */
+    public Text summary() {
+        MutableText text = Text.literal("原理图 " + schematicName + " 共需 " + itemIds.length + " 种材料，缺少 " + missingKinds + " 种 ")
+                .formatted(missingKinds > 0 ? Formatting.YELLOW : Formatting.GREEN);
+        text.append(link("[详细报告]", "/warehouse page 1"));
+        text.append(Text.literal(" "));
+        text.append(link("[关闭清单]", "/warehouse hud off"));
+        return text;
+    }
+
+    private Text line(int i) {
+        Text itemName = MaterialKeys.displayName(itemIds[i]);
+        int missing = needed[i] - has[i];
+        if (missing > 0) {
+            return Text.literal("缺少: ").formatted(Formatting.RED)
+                    .append(itemName.copy().formatted(Formatting.RED))
+                    .append(Text.literal(" - 需要: " + needed[i] + ", 现有: " + has[i] + ", 缺少: " + missing).formatted(Formatting.RED));
+        }
+        return Text.literal("充足: ").formatted(Formatting.GREEN)
+                .append(itemName.copy().formatted(Formatting.GREEN))
+                .append(Text.literal(" - 需要: " + needed[i] + ", 现有: " + has[i]).formatted(Formatting.GREEN));
+    }
+
+    private int[] order() {
+        if (order == null) {
+            Integer[] indices = new Integer[itemIds.length];
+            int size = 0;
+            for (int i = 0; i < itemIds.length; i++) {
+                if (!missingOnly || needed[i] > has[i]) {
+                    indices[size++] = i;
+                }
+            }
+            Comparator<Integer> comparator = switch (sort) {
+                case SHORTFALL -> Comparator.<Integer>comparingLong(i -> (long) has[i] - needed[i])
+                        .thenComparingInt(i -> -needed[i]);
+                case NAME -> Comparator.comparing(i -> MaterialKeys.itemName(itemIds[i]));
+            };
+            Arrays.sort(indices, 0, size, comparator);
+            order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = indices[i];
+            }
+        }
+        return order;
+    }
+
+    private static Text toggle(String label, boolean selected, String command) {
+        if (selected) {
+            return Text.literal("[" + label + "]").formatted(Formatting.WHITE, Formatting.BOLD);
+        }
+        return link("[" + label + "]", command);
+    }
+
+    private static Text link(String label, String command) {
+        return Text.literal(label).formatted(Formatting.AQUA).styled(style -> style
+                .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command))
+                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal(command))));
+    }
+
+    /**
+     * 原理图名称可能包含空格或引号，作为命令参数时需要加引号
+     */
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
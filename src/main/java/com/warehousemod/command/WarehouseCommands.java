@@ -1,142 +1,387 @@
 package com.warehousemod.command;
 
 import com.warehousemod.WarehouseMod;
+import com.warehousemod.config.WarehouseConfig;
+import com.warehousemod.manager.Warehouse;
+import com.warehousemod.manager.WarehouseManager;
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.metrics.LatencyHistogram;
+import com.warehousemod.metrics.WarehouseMetrics;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
 
 public class WarehouseCommands {
+    // 补全列表最多显示的原理图数量
+    private static final int MAX_SCHEMATIC_SUGGESTIONS = 50;
+
     public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
         dispatcher.register(literal("o")
-                .executes(context -> {
-                    ServerPlayerEntity player = context.getSource().getPlayer();
-                    if (player != null) {
-                        if (WarehouseMod.warehouseManager != null) {
-                            WarehouseMod.warehouseManager.openWarehouse(player);
-                        } else {
-                            player.sendMessage(Text.literal("§c仓库管理器未初始化，请稍后重试"), false);
-                        }
-                    }
-                    return 1;
-                })
+                .executes(context -> openWarehouse(context.getSource().getPlayer(), WarehouseManager.DEFAULT_WAREHOUSE))
+                .then(argument("name", StringArgumentType.word())
+                        .executes(context -> openWarehouse(context.getSource().getPlayer(), StringArgumentType.getString(context, "name")))
+                )
         );
 
         dispatcher.register(literal("cr")
-                .executes(context -> {
-                    ServerPlayerEntity player = context.getSource().getPlayer();
-                    if (player != null) {
-                        if (WarehouseMod.warehouseManager != null) {
-                            WarehouseMod.warehouseManager.clearWarehouse(player);
-                            player.sendMessage(Text.literal("§a已清空仓库并将物品扔出"), false);
-                        } else {
-                            player.sendMessage(Text.literal("§c仓库管理器未初始化，请稍后重试"), false);
-                        }
-                    }
-                    return 1;
-                })
+                .executes(context -> clearWarehouse(context.getSource().getPlayer(), WarehouseManager.DEFAULT_WAREHOUSE))
+                .then(argument("name", StringArgumentType.word())
+                        .executes(context -> clearWarehouse(context.getSource().getPlayer(), StringArgumentType.getString(context, "name")))
+                )
+        );
+
+        // /c 之后的单词都当作原理图名称，其他子命令放在 /warehouse 下，避免和原理图重名
+        dispatcher.register(literal("warehouse")
+                .then(literal("stats")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .executes(context -> {
+                            context.getSource().sendFeedback(() -> statsText(), false);
+                            return 1;
+                        })
+                )
+                .then(literal("cancel")
+                        .executes(context -> {
+                            ServerPlayerEntity player = context.getSource().getPlayer();
+                            if (player != null) {
+                                if (MaterialCalculations.cancel(player.getUuid())) {
+                                    player.sendMessage(Text.literal("§e已取消材料计算"), false);
+                                } else {
+                                    player.sendMessage(Text.literal("§7当前没有进行中的材料计算"), false);
+                                }
+                            }
+                            return 1;
+                        })
+                )
+                // 以下命令使用缓存的报告，不会重新计算
+                .then(literal("page")
+                        .then(argument("page", IntegerArgumentType.integer(1))
+                                .executes(context -> {
+                                    int page = IntegerArgumentType.getInteger(context, "page");
+                                    return showReport(context.getSource().getPlayer(), page, report -> {
+                                    });
+                                })
+                        )
+                )
+                .then(literal("filter")
+                        .then(literal("all")
+                                .executes(context -> showReport(context.getSource().getPlayer(), 1, report -> report.setMissingOnly(false))))
+                        .then(literal("missing")
+                                .executes(context -> showReport(context.getSource().getPlayer(), 1, report -> report.setMissingOnly(true))))
+                )
+                .then(literal("sort")
+                        .then(literal("shortfall")
+                                .executes(context -> showReport(context.getSource().getPlayer(), 1, report -> report.setSort(MaterialReport.Sort.SHORTFALL))))
+                        .then(literal("name")
+                                .executes(context -> showReport(context.getSource().getPlayer(), 1, report -> report.setSort(MaterialReport.Sort.NAME))))
+                )
+                .then(literal("hud")
+                        .then(literal("on")
+                                .executes(context -> showChecklist(context.getSource().getPlayer())))
+                        .then(literal("off")
+                                .executes(context -> {
+                                    ServerPlayerEntity player = context.getSource().getPlayer();
+                                    if (player != null && !MaterialChecklists.hide(player)) {
+                                        player.sendMessage(Text.literal("§7当前没有显示材料清单"), false);
+                                    }
+                                    return 1;
+                                }))
+                )
         );
 
         dispatcher.register(literal("c")
                 .then(argument("schematic", StringArgumentType.string())
+                        .suggests(WarehouseCommands::suggestSchematics)
                         .executes(context -> {
                             ServerPlayerEntity player = context.getSource().getPlayer();
                             String schematicName = StringArgumentType.getString(context, "schematic");
 
                             if (player != null) {
-                                calculateMaterials(player, schematicName);
+                                calculateMaterials(player, schematicName, WarehouseManager.DEFAULT_WAREHOUSE);
                             }
                             return 1;
                         })
+                        .then(argument("warehouse", StringArgumentType.word())
+                                .executes(context -> {
+                                    ServerPlayerEntity player = context.getSource().getPlayer();
+                                    String schematicName = StringArgumentType.getString(context, "schematic");
+                                    String warehouseName = StringArgumentType.getString(context, "warehouse");
+
+                                    if (player != null) {
+                                        calculateMaterials(player, schematicName, warehouseName);
+                                    }
+                                    return 1;
+                                })
+                        )
                 )
         );
     }
 
-    private static void calculateMaterials(ServerPlayerEntity player, String schematicName) {
-        try {
-            if (WarehouseMod.warehouseManager == null || WarehouseMod.schematicManager == null) {
-                player.sendMessage(Text.literal("§c仓库管理器或原理图管理器未初始化，请稍后重试"), false);
-                return;
+    /**
+     * 原理图名称补全，只查询内存中的索引，不会读取磁盘
+     */
+    private static CompletableFuture<Suggestions> suggestSchematics(CommandContext<ServerCommandSource> context, SuggestionsBuilder builder) {
+        if (WarehouseMod.schematicManager == null) {
+            return builder.buildFuture();
+        }
+        String input = builder.getRemaining();
+        if (input.startsWith("\"")) {
+            input = input.substring(1);
+        }
+        for (String name : WarehouseMod.schematicManager.suggestSchematics(input, MAX_SCHEMATIC_SUGGESTIONS)) {
+            // 含有空格等字符的名称需要加引号
+            builder.suggest(StringArgumentType.escapeIfRequired(name));
+        }
+        return builder.buildFuture();
+    }
+
+    private static int openWarehouse(ServerPlayerEntity player, String name) {
+        if (player != null) {
+            Warehouse warehouse = resolveWarehouse(player, name);
+            if (warehouse != null) {
+                warehouse.open(player);
             }
+        }
+        return 1;
+    }
 
-            // 获取仓库物品并显示调试信息
-            Map<String, Integer> warehouseItems = WarehouseMod.warehouseManager.getWarehouseItems();
-            player.sendMessage(Text.literal("§e仓库中现有物品数量: " + warehouseItems.size()), false);
-            if (!warehouseItems.isEmpty()) {
-                warehouseItems.forEach((item, count) -> {
-                    // 使用物品ID创建可翻译的文本
-                    Text displayText = Text.translatable(item).copy().formatted(Formatting.GRAY)
-                            .append(Text.literal(": " + count).formatted(Formatting.WHITE));
-                    player.sendMessage(Text.literal("§7- ").append(displayText), false);
-                });
+    private static int clearWarehouse(ServerPlayerEntity player, String name) {
+        if (player != null) {
+            Warehouse warehouse = resolveWarehouse(player, name);
+            if (warehouse != null) {
+                if (warehouse.dropAll(player)) {
+                    player.sendMessage(Text.literal("§a已清空仓库并将物品扔出"), false);
+                } else {
+                    player.sendMessage(Text.literal("§e仓库物品较多，已扔出一部分，请再次执行 /cr"), false);
+                }
             }
+        }
+        return 1;
+    }
+
+    /**
+     * 按名称获取仓库，失败时向玩家发送提示并返回 null
+     */
+    private static Warehouse resolveWarehouse(ServerPlayerEntity player, String name) {
+        if (WarehouseMod.warehouseManager == null) {
+            player.sendMessage(Text.literal("§c仓库管理器未初始化，请稍后重试"), false);
+            return null;
+        }
+        String normalized = WarehouseManager.normalizeName(name);
+        if (!WarehouseManager.isValidName(normalized)) {
+            player.sendMessage(Text.literal("§c仓库名称只能包含字母、数字、下划线和减号，最长 32 个字符"), false);
+            return null;
+        }
+        // 任何人都能使用已有的仓库，创建新仓库需要权限，避免玩家随意创建大量仓库
+        if (!WarehouseMod.warehouseManager.exists(normalized)
+                && !player.hasPermissionLevel(WarehouseConfig.get().warehouseCreatePermission)) {
+            player.sendMessage(Text.literal("§c仓库 " + normalized + " 不存在，你没有创建新仓库的权限"), false);
+            return null;
+        }
+        return WarehouseMod.warehouseManager.getWarehouse(normalized);
+    }
+
+    private static void calculateMaterials(ServerPlayerEntity player, String schematicName, String warehouseName) {
+        if (WarehouseMod.warehouseManager == null || WarehouseMod.schematicManager == null) {
+            player.sendMessage(Text.literal("§c仓库管理器或原理图管理器未初始化，请稍后重试"), false);
+            return;
+        }
+        if (!WarehouseManager.isValidName(WarehouseManager.normalizeName(warehouseName))) {
+            player.sendMessage(Text.literal("§c仓库名称只能包含字母、数字、下划线和减号，最长 32 个字符"), false);
+            return;
+        }
 
-            // 获取原理图材料
+        UUID playerId = player.getUuid();
+        MinecraftServer server = player.getServer();
+
+        // 在后台线程解析原理图，线程都在使用时排队
+        MaterialCalculations.Submission submission;
+        try {
+            submission = MaterialCalculations.submit(playerId, schematicName);
+        } catch (RejectedExecutionException e) {
+            player.sendMessage(Text.literal("§c" + e.getMessage()), false);
+            return;
+        }
+        if (submission == null) {
+            int position = MaterialCalculations.queuePosition(playerId);
+            player.sendMessage(Text.literal("§c你已有一个" + (position > 0 ? "排队中（第 " + position + " 位）" : "进行中") + "的材料计算，使用 /warehouse cancel 取消"), false);
+            return;
+        }
+        CompletableFuture<MaterialCounts> future = submission.result();
+        if (submission.position() > 0) {
+            player.sendMessage(Text.literal("§e其他玩家的原理图正在解析，排在第 " + submission.position() + " 位: " + schematicName + "，使用 /warehouse cancel 取消"), false);
+            submission.started().thenRun(() -> server.execute(() -> {
+                ServerPlayerEntity target = server.getPlayerManager().getPlayer(playerId);
+                if (target != null) {
+                    target.sendMessage(Text.literal("§e开始解析原理图: " + schematicName), false);
+                }
+            }));
+        } else {
             player.sendMessage(Text.literal("§e正在解析原理图: " + schematicName), false);
-            Map<String, Integer> schematicMaterials = WarehouseMod.schematicManager.getSchematicMaterials(schematicName);
-
-            player.sendMessage(Text.literal("§e原理图解析完成，找到材料种类: " + schematicMaterials.size()), false);
-            schematicMaterials.forEach((item, count) -> {
-                // 使用物品ID创建可翻译的文本
-                Text displayText = Text.translatable(item).copy().formatted(Formatting.GRAY)
-                        .append(Text.literal(": " + count).formatted(Formatting.WHITE));
-                player.sendMessage(Text.literal("§7- ").append(displayText), false);
-            });
-
-            // 构建材料计算报告
-            Text resultHeader = Text.literal("=== 材料计算报告 ===").formatted(Formatting.GOLD, Formatting.BOLD);
-            Text schematicInfo = Text.literal("原理图: " + schematicName).formatted(Formatting.GREEN);
-
-            player.sendMessage(resultHeader, false);
-            player.sendMessage(schematicInfo, false);
-            player.sendMessage(Text.literal(""), false); // 空行
-
-            boolean hasMissing = false;
-            for (Map.Entry<String, Integer> entry : schematicMaterials.entrySet()) {
-                String item = entry.getKey();
-                int needed = entry.getValue();
-                int has = warehouseItems.getOrDefault(item, 0);
-                int missing = Math.max(0, needed - has);
-
-                // 创建物品名称的翻译文本
-                Text itemName = Text.translatable(item);
-
-                if (missing > 0) {
-                    hasMissing = true;
-                    Text missingText = Text.literal("缺少: ")
-                            .formatted(Formatting.RED)
-                            .append(itemName.copy().formatted(Formatting.RED))
-                            .append(Text.literal(" - 需要: " + needed + ", 现有: " + has + ", 缺少: " + missing).formatted(Formatting.RED));
-                    player.sendMessage(missingText, false);
-                } else {
-                    Text sufficientText = Text.literal("充足: ")
-                            .formatted(Formatting.GREEN)
-                            .append(itemName.copy().formatted(Formatting.GREEN))
-                            .append(Text.literal(" - 需要: " + needed + ", 现有: " + has).formatted(Formatting.GREEN));
-                    player.sendMessage(sufficientText, false);
+        }
+        // 从提交到报告发出的总耗时
+        WarehouseMetrics.Sample sample = WarehouseMetrics.start(WarehouseMetrics.Operation.CALCULATE_COMMAND, schematicName);
+
+        // 结果回到主线程处理，此时读取的仓库数据是一致的
+        future.whenComplete((schematicMaterials, error) -> server.execute(() -> {
+            sample.stop(error == null);
+            ServerPlayerEntity target = server.getPlayerManager().getPlayer(playerId);
+            if (target == null) {
+                return;
+            }
+
+            if (error != null) {
+                Throwable cause = MaterialCalculations.unwrap(error);
+                if (cause instanceof CancellationException) {
+                    return;
                 }
+                if (cause instanceof TimeoutException) {
+                    target.sendMessage(Text.literal("§c原理图解析超时: " + schematicName), false);
+                    return;
+                }
+                WarehouseMod.LOGGER.error("计算材料时出错", cause);
+                sendError(target, cause);
+                return;
             }
 
-            player.sendMessage(Text.literal(""), false); // 空行
-            if (!hasMissing) {
-                player.sendMessage(Text.literal("✓ 所有材料都充足！").formatted(Formatting.DARK_GREEN, Formatting.BOLD), false);
-            } else {
-                player.sendMessage(Text.literal("⚠ 部分材料不足，请补充仓库").formatted(Formatting.YELLOW), false);
+            try {
+                sendReport(target, schematicName, warehouseName, schematicMaterials);
+            } catch (Exception e) {
+                WarehouseMod.LOGGER.error("计算材料时出错", e);
+                sendError(target, e);
+            }
+        }));
+    }
+
+    /**
+     * /warehouse stats 的内容，启动以来的累计统计
+     */
+    private static Text statsText() {
+        MutableText text = Text.literal("=== 仓库模组统计 ===").formatted(Formatting.GOLD, Formatting.BOLD);
+        for (WarehouseMetrics.Operation operation : WarehouseMetrics.Operation.values()) {
+            LatencyHistogram histogram = WarehouseMetrics.histogram(operation);
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
             }
+            text.append(Text.literal("\n" + operation.getLabel() + ": ").formatted(Formatting.YELLOW));
+            text.append(Text.literal(count + " 次, p50 " + formatNanos(histogram.percentile(0.5))
+                    + ", p99 " + formatNanos(histogram.percentile(0.99))
+                    + ", 最大 " + formatNanos(histogram.getMaxNanos())).formatted(Formatting.WHITE));
+        }
+        for (WarehouseMetrics.Cache cache : WarehouseMetrics.Cache.values()) {
+            long hits = WarehouseMetrics.cacheHits(cache);
+            long total = hits + WarehouseMetrics.cacheMisses(cache);
+            String rate = total == 0 ? "-" : String.format("%.1f%%", hits * 100.0 / total);
+            text.append(Text.literal("\n" + cache.getLabel() + "命中率: ").formatted(Formatting.YELLOW));
+            text.append(Text.literal(rate + " (" + hits + "/" + total + ")").formatted(Formatting.WHITE));
+        }
+        text.append(Text.literal("\n读取: ").formatted(Formatting.YELLOW));
+        text.append(Text.literal(formatBytes(WarehouseMetrics.getBytesRead())).formatted(Formatting.WHITE));
+        text.append(Text.literal("  写入: ").formatted(Formatting.YELLOW));
+        text.append(Text.literal(formatBytes(WarehouseMetrics.getBytesWritten())).formatted(Formatting.WHITE));
+        text.append(Text.literal("\n材料计算: ").formatted(Formatting.YELLOW));
+        text.append(Text.literal(MaterialCalculations.runningCount() + " 个进行中, " + MaterialCalculations.queuedCount() + " 个排队").formatted(Formatting.WHITE));
+        if (WarehouseMod.schematicManager != null) {
+            long limit = WarehouseMod.schematicManager.getParseBudgetLimit();
+            text.append(Text.literal("\n解析内存: ").formatted(Formatting.YELLOW));
+            text.append(Text.literal(formatBytes(limit - WarehouseMod.schematicManager.getParseBudgetAvailable()) + " / " + formatBytes(limit)).formatted(Formatting.WHITE));
+        }
+        if (WarehouseMod.warehouseManager != null) {
+            text.append(Text.literal("\n已加载仓库: " + WarehouseMod.warehouseManager.getLoadedCount()).formatted(Formatting.GRAY));
+        }
+        return text;
+    }
 
-        } catch (Exception e) {
-            WarehouseMod.LOGGER.error("计算材料时出错", e);
-            player.sendMessage(Text.literal("§c错误: " + e.getMessage()), false);
-            player.sendMessage(Text.literal("§e提示: 请检查原理图文件是否存在且格式正确"), false);
-            player.sendMessage(Text.literal("§e支持的格式: .litematic, .schematic, .schem, .nbt"), false);
+    private static String formatNanos(long nanos) {
+        return String.format("%.2f ms", nanos / 1_000_000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static void sendError(ServerPlayerEntity player, Throwable e) {
+        player.sendMessage(Text.literal("§c错误: " + e.getMessage()), false);
+        player.sendMessage(Text.literal("§e提示: 请检查原理图文件是否存在且格式正确"), false);
+        player.sendMessage(Text.literal("§e支持的格式: .litematic, .schematic, .schem, .nbt"), false);
+    }
+
+    private static void sendReport(ServerPlayerEntity player, String schematicName, String warehouseName, MaterialCounts schematicMaterials) {
+        Warehouse warehouse = resolveWarehouse(player, warehouseName);
+        if (warehouse == null) {
+            return;
+        }
+
+        // 报告只生成一次，之后的翻页、筛选和排序都使用缓存
+        MaterialReport report = MaterialReport.create(schematicName, warehouse.getName(), schematicMaterials, warehouse.getItems());
+        MaterialReport.put(player.getUuid(), report);
+        if (MaterialChecklists.show(player, report, warehouse)) {
+            // 客户端自己显示清单，聊天栏只发送一行摘要
+            player.sendMessage(report.summary(), false);
+        } else {
+            player.sendMessage(report.render(1), false);
+        }
+    }
+
+    private static int showChecklist(ServerPlayerEntity player) {
+        if (player == null) {
+            return 0;
+        }
+        MaterialReport report = MaterialReport.get(player.getUuid());
+        if (report == null) {
+            player.sendMessage(Text.literal("§7没有可以显示的报告，请先使用 /c <原理图> 计算材料"), false);
+            return 0;
+        }
+        if (!MaterialChecklists.canShow(player)) {
+            player.sendMessage(Text.literal("§c客户端没有安装本模组，无法显示材料清单"), false);
+            return 0;
+        }
+        Warehouse warehouse = resolveWarehouse(player, report.warehouseName());
+        if (warehouse != null) {
+            MaterialChecklists.show(player, report, warehouse);
+        }
+        return 1;
+    }
+
+    /**
+     * 修改缓存报告的显示方式后发送指定页
+     */
+    private static int showReport(ServerPlayerEntity player, int page, Consumer<MaterialReport> update) {
+        if (player == null) {
+            return 0;
+        }
+        MaterialReport report = MaterialReport.get(player.getUuid());
+        if (report == null) {
+            player.sendMessage(Text.literal("§7没有可以显示的报告，请先使用 /c <原理图> 计算材料"), false);
+            return 0;
         }
+        update.accept(report);
+        player.sendMessage(report.render(page), false);
+        return 1;
     }
-}
\ No newline at end of file
+}
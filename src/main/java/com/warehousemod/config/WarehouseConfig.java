@@ -0,0 +1,127 @@
+package com.warehousemod.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * 模组配置，保存在 config/warehousemod.properties
+ * 缺少的配置项会使用默认值并写回文件
+ */
+public class WarehouseConfig {
+    private static final String FILE_NAME = "warehousemod.properties";
+
+    private static WarehouseConfig instance = new WarehouseConfig();
+
+    /** 原理图并行统计的最大线程数，1 表示只在当前线程统计 */
+    public int parseParallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /** 每个并行统计任务至少处理的方块数，小于该值的区域不再拆分 */
+    public int parseParallelMinBlocks = 1 << 18;
+    /** 同时解析的原理图最多占用多少内存（MB，按文件大小估算），超过该值的单个原理图会被拒绝 */
+    public int parseMemoryBudgetMb = (int) Math.max(64, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+    /** 内存中最多缓存多少个原理图的材料统计结果 */
+    public int cacheMaxEntries = 64;
+    /** 缓存指纹是否包含文件内容校验和（需要额外读取一遍文件） */
+    public boolean cacheVerifyHash = false;
+    /** 原理图文件最后一次变化后等待多久再在后台解析（毫秒） */
+    public int watchDebounceMillis = 2000;
+    /** /c 解析原理图使用的线程数 */
+    public int calculateThreads = 2;
+    /** 最多有多少个 /c 计算排队等待，超出时拒绝新的计算 */
+    public int calculateMaxQueued = 16;
+    /** /c 解析原理图的超时时间（秒），从开始解析时计算 */
+    public int calculateTimeoutSeconds = 60;
+    /** 仓库最后一次变化后等待多久再在后台保存（毫秒） */
+    public int saveDebounceMillis = 5000;
+    /** 是否只把变化的槽位追加到日志，关闭时每次保存都会重写完整的快照 */
+    public boolean saveJournal = true;
+    /** 日志文件超过多少字节后合并到快照中 */
+    public int saveJournalCompactBytes = 1 << 20;
+    /** 仓库多久没有被使用后从内存中卸载（秒） */
+    public int warehouseIdleSeconds = 300;
+    /** 创建新仓库需要的权限等级，0 表示所有玩家都可以创建；默认仓库不受限制 */
+    public int warehouseCreatePermission = 2;
+
+    public static WarehouseConfig get() {
+        return instance;
+    }
+
+    public static void load(Path configDir) {
+        WarehouseConfig config = new WarehouseConfig();
+        Path file = configDir.resolve(FILE_NAME);
+        Properties properties = new Properties();
+
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                com.warehousemod.WarehouseMod.LOGGER.error("读取配置文件失败，使用默认配置", e);
+            }
+        }
+
+        config.parseParallelism = Math.max(1, readInt(properties, "parse.parallelism", config.parseParallelism));
+        config.parseParallelMinBlocks = Math.max(4096, readInt(properties, "parse.parallelMinBlocks", config.parseParallelMinBlocks));
+        config.parseMemoryBudgetMb = Math.max(16, readInt(properties, "parse.memoryBudgetMb", config.parseMemoryBudgetMb));
+        config.cacheMaxEntries = Math.max(1, readInt(properties, "cache.maxEntries", config.cacheMaxEntries));
+        config.cacheVerifyHash = readBoolean(properties, "cache.verifyHash", config.cacheVerifyHash);
+        config.watchDebounceMillis = Math.max(100, readInt(properties, "watch.debounceMillis", config.watchDebounceMillis));
+        config.calculateThreads = Math.max(1, readInt(properties, "calculate.threads", config.calculateThreads));
+        config.calculateMaxQueued = Math.max(0, readInt(properties, "calculate.maxQueued", config.calculateMaxQueued));
+        config.calculateTimeoutSeconds = Math.max(1, readInt(properties, "calculate.timeoutSeconds", config.calculateTimeoutSeconds));
+        config.saveDebounceMillis = Math.max(0, readInt(properties, "save.debounceMillis", config.saveDebounceMillis));
+        config.saveJournal = readBoolean(properties, "save.journal", config.saveJournal);
+        config.saveJournalCompactBytes = Math.max(4096, readInt(properties, "save.journalCompactBytes", config.saveJournalCompactBytes));
+        config.warehouseIdleSeconds = Math.max(30, readInt(properties, "warehouse.idleSeconds", config.warehouseIdleSeconds));
+        config.warehouseCreatePermission = Math.max(0, Math.min(4, readInt(properties, "warehouse.createPermission", config.warehouseCreatePermission)));
+
+        config.write(properties);
+        try {
+            Files.createDirectories(configDir);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                properties.store(out, "Warehouse Mod");
+            }
+        } catch (IOException e) {
+            com.warehousemod.WarehouseMod.LOGGER.error("保存配置文件失败", e);
+        }
+
+        instance = config;
+    }
+
+    private void write(Properties properties) {
+        properties.setProperty("parse.parallelism", Integer.toString(parseParallelism));
+        properties.setProperty("parse.parallelMinBlocks", Integer.toString(parseParallelMinBlocks));
+        properties.setProperty("parse.memoryBudgetMb", Integer.toString(parseMemoryBudgetMb));
+        properties.setProperty("cache.maxEntries", Integer.toString(cacheMaxEntries));
+        properties.setProperty("cache.verifyHash", Boolean.toString(cacheVerifyHash));
+        properties.setProperty("watch.debounceMillis", Integer.toString(watchDebounceMillis));
+        properties.setProperty("calculate.threads", Integer.toString(calculateThreads));
+        properties.setProperty("calculate.maxQueued", Integer.toString(calculateMaxQueued));
+        properties.setProperty("calculate.timeoutSeconds", Integer.toString(calculateTimeoutSeconds));
+        properties.setProperty("save.debounceMillis", Integer.toString(saveDebounceMillis));
+        properties.setProperty("save.journal", Boolean.toString(saveJournal));
+        properties.setProperty("save.journalCompactBytes", Integer.toString(saveJournalCompactBytes));
+        properties.setProperty("warehouse.idleSeconds", Integer.toString(warehouseIdleSeconds));
+        properties.setProperty("warehouse.createPermission", Integer.toString(warehouseCreatePermission));
+    }
+
+    private static boolean readBoolean(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private static int readInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("配置项 {} 的值无效: {}", key, value);
+            return defaultValue;
+        }
+    }
+}
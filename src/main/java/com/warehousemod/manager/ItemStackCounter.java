@@ -0,0 +1,120 @@
+package com.warehousemod.manager;
+
+import com.google.common.collect.MapMaker;
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.ContainerComponent;
+import net.minecraft.item.ItemStack;
+
+import java.util.Map;
+
+/**
+ * 统计物品堆中包含的物品，潜影盒按内容递归展开
+ * 只在服务器线程上使用
+ */
+class ItemStackCounter {
+    private static final int MAX_SHULKER_DEPTH = 16;
+    // 潜影盒内容统计缓存，按组件实例（而不是 equals）查找，不需要对 27 个物品堆计算哈希；
+    // 弱引用键，物品离开仓库、组件不再被引用后条目自动移除
+    private final Map<ContainerComponent, MaterialCounts> shulkerContentsCache = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * 统计单个物品堆中的物品，潜影盒会递归统计其内容
+     * 返回的表可能是共享的缓存结果，是只读的
+     */
+    MaterialCounts count(ItemStack stack) {
+        if (isShulkerBox(stack)) {
+            return getShulkerBoxItems(stack);
+        }
+        return MaterialCounts.of(MaterialKeys.itemId(stack), stack.getCount());
+    }
+
+    /**
+     * 检查物品是否为潜影盒
+     */
+    private boolean isShulkerBox(ItemStack stack) {
+        String itemId = stack.getItem().getTranslationKey();
+        return itemId.contains("shulker_box");
+    }
+
+    /**
+     * 读取潜影盒内的所有物品
+     * 相同的容器组件只统计一次，结果缓存到组件改变为止
+     */
+    private MaterialCounts getShulkerBoxItems(ItemStack shulkerBox) {
+        try {
+            // 方法1: 使用组件系统获取潜影盒内容
+            ContainerComponent containerComponent = shulkerBox.get(DataComponentTypes.CONTAINER);
+            if (containerComponent != null) {
+                return getContainerItems(containerComponent);
+            }
+
+            // 如果容器组件为空，使用简化方法
+            com.warehousemod.WarehouseMod.LOGGER.warn("潜影盒容器组件为空");
+        } catch (Exception e) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("读取潜影盒物品失败: {}", e.getMessage());
+        }
+
+        // 如果组件方法失败，使用简化方法
+        MaterialCounts items = new MaterialCounts(1);
+        trySimpleShulkerBoxReading(shulkerBox, items);
+        return items;
+    }
+
+    private MaterialCounts getContainerItems(ContainerComponent containerComponent) {
+        // 容器组件不可变，同一个组件实例的统计结果不会变化
+        MaterialCounts cached = shulkerContentsCache.get(containerComponent);
+        if (cached != null) {
+            WarehouseMetrics.cacheHit(WarehouseMetrics.Cache.SHULKER_CONTENTS);
+            return cached;
+        }
+        WarehouseMetrics.cacheMiss(WarehouseMetrics.Cache.SHULKER_CONTENTS);
+
+        MaterialCounts items = new MaterialCounts();
+        accumulateContainerItems(containerComponent, items, 1);
+        shulkerContentsCache.put(containerComponent, items.freeze());
+        return items;
+    }
+
+    /**
+     * 把容器内的物品累加到同一个表中，嵌套的潜影盒不再创建中间表
+     */
+    private void accumulateContainerItems(ContainerComponent containerComponent, MaterialCounts items, int depth) {
+        for (ItemStack nestedStack : containerComponent.iterateNonEmpty()) {
+            if (isShulkerBox(nestedStack)) {
+                // 递归检查嵌套的潜影盒
+                ContainerComponent nestedContainer = nestedStack.get(DataComponentTypes.CONTAINER);
+                if (nestedContainer == null || depth >= MAX_SHULKER_DEPTH) {
+                    trySimpleShulkerBoxReading(nestedStack, items);
+                    continue;
+                }
+                MaterialCounts cached = shulkerContentsCache.get(nestedContainer);
+                if (cached != null) {
+                    items.addAll(cached, nestedStack.getCount());
+                } else {
+                    for (int i = 0; i < nestedStack.getCount(); i++) {
+                        accumulateContainerItems(nestedContainer, items, depth + 1);
+                    }
+                }
+            } else {
+                items.add(MaterialKeys.itemId(nestedStack), nestedStack.getCount());
+            }
+        }
+    }
+
+    /**
+     * 简化方法：作为最后的备选方案
+     */
+    private void trySimpleShulkerBoxReading(ItemStack shulkerBox, MaterialCounts items) {
+        try {
+            // 只是简单地添加潜影盒本身作为物品
+            items.add(MaterialKeys.itemId(shulkerBox), 1);
+
+            com.warehousemod.WarehouseMod.LOGGER.debug("使用简化方法，只统计潜影盒本身");
+        } catch (Exception e3) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("简化方法也失败: {}", e3.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,167 @@
+package com.warehousemod.manager;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 监听原理图文件夹，在后台预先解析新上传或修改过的原理图
+ * 文件在一段时间内没有新事件且大小不再变化后才会被处理，避免解析上传到一半的文件
+ */
+public class SchematicFolderWatcher {
+
+    private record Pending(long lastEventTime, long size) {
+    }
+
+    private final Path folder;
+    private final long debounceMillis;
+    private final Predicate<Path> filter;
+    private final Consumer<Path> onChanged;
+    private final Consumer<Path> onDeleted;
+    private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+    private Thread watchThread;
+    private ScheduledExecutorService worker;
+
+    public SchematicFolderWatcher(Path folder, long debounceMillis, Predicate<Path> filter,
+                                  Consumer<Path> onChanged, Consumer<Path> onDeleted) {
+        this.folder = folder;
+        this.debounceMillis = debounceMillis;
+        this.filter = filter;
+        this.onChanged = onChanged;
+        this.onDeleted = onDeleted;
+    }
+
+    public void start() {
+        try {
+            watchService = folder.getFileSystem().newWatchService();
+            folder.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("无法监听原理图文件夹，将只在查询时解析: {}", e.getMessage());
+            return;
+        }
+
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warehousemod-schematic-indexer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long interval = Math.max(100, debounceMillis / 2);
+        worker.scheduleWithFixedDelay(this::processPending, interval, interval, TimeUnit.MILLISECONDS);
+
+        watchThread = new Thread(this::watchLoop, "warehousemod-schematic-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+        // 启动时把已有文件也加入队列，已缓存的文件只会做一次指纹检查
+        worker.execute(this::scanFolder);
+    }
+
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+        pending.clear();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        worker.execute(this::scanFolder);
+                        continue;
+                    }
+
+                    Path file = folder.resolve((Path) event.context());
+                    if (!filter.test(file)) {
+                        continue;
+                    }
+
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        pending.remove(file);
+                        onDeleted.accept(file);
+                    } else {
+                        pending.put(file, new Pending(System.currentTimeMillis(), -1));
+                    }
+                }
+                if (!key.reset()) {
+                    com.warehousemod.WarehouseMod.LOGGER.warn("原理图文件夹监听已失效");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 关闭时正常退出
+        }
+    }
+
+    private void scanFolder() {
+        try (var files = Files.list(folder)) {
+            files.filter(filter).forEach(file -> pending.putIfAbsent(file, new Pending(0, -1)));
+        } catch (IOException e) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("扫描原理图文件夹失败: {}", e.getMessage());
+        }
+    }
+
+    private void processPending() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Pending> entry = iterator.next();
+            Path file = entry.getKey();
+            Pending state = entry.getValue();
+            if (now - state.lastEventTime() < debounceMillis) {
+                continue;
+            }
+
+            long size;
+            try {
+                size = Files.size(file);
+            } catch (IOException e) {
+                iterator.remove();
+                continue;
+            }
+
+            // 文件大小还在变化，说明仍在上传
+            if (size != state.size()) {
+                pending.replace(file, state, new Pending(state.lastEventTime(), size));
+                continue;
+            }
+
+            if (!pending.remove(file, state)) {
+                continue;
+            }
+            try {
+                onChanged.accept(file);
+            } catch (Exception e) {
+                com.warehousemod.WarehouseMod.LOGGER.warn("后台解析原理图 {} 失败: {}", file.getFileName(), e.getMessage());
+            }
+        }
+    }
+}
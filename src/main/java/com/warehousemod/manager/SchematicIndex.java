@@ -0,0 +1,184 @@
+package com.warehousemod.manager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 原理图文件夹的内存索引：原理图名称（不含扩展名）-> 文件
+ * 启动时扫描一次，之后由文件夹监听增量更新；查询和补全都只访问内存，不读取磁盘
+ * 名称按不区分大小写的顺序排列，前缀查询是一次范围查找
+ */
+public class SchematicIndex {
+    // 不区分大小写排序，大小写不同的名称仍然是不同的条目
+    private static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    /**
+     * 同名的原理图可能有多种格式，按扩展名的优先顺序保存
+     */
+    private record Entry(String name, Path[] files) {
+        Path first() {
+            for (Path file : files) {
+                if (file != null) {
+                    return file;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Path folder;
+    private final String[] extensions;
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>(ORDER);
+
+    /**
+     * @param extensions 支持的扩展名，同名时排在前面的优先
+     */
+    public SchematicIndex(Path folder, String[] extensions) {
+        this.folder = folder;
+        this.extensions = extensions;
+    }
+
+    /**
+     * 重新扫描整个文件夹，已不存在的文件从索引中移除
+     */
+    public void scan() {
+        SchematicIndex scanned = new SchematicIndex(folder, extensions);
+        try (var files = Files.list(folder)) {
+            files.forEach(scanned::add);
+        } catch (IOException e) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("扫描原理图文件夹失败: {}", e.getMessage());
+            return;
+        }
+        // 扫描期间查询仍然可以看到旧的条目
+        entries.keySet().retainAll(scanned.entries.keySet());
+        entries.putAll(scanned.entries);
+        com.warehousemod.WarehouseMod.LOGGER.info("已索引 {} 个原理图", entries.size());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 记录一个新增或修改过的文件，不支持的文件会被忽略
+     */
+    public void add(Path file) {
+        String fileName = file.getFileName().toString();
+        int ext = extensionIndex(fileName);
+        if (ext < 0) {
+            return;
+        }
+        String name = fileName.substring(0, fileName.length() - extensions[ext].length());
+        entries.compute(name, (key, entry) -> {
+            Path[] files = entry == null ? new Path[extensions.length] : entry.files().clone();
+            files[ext] = file;
+            return new Entry(name, files);
+        });
+    }
+
+    /**
+     * 移除一个已删除的文件
+     */
+    public void remove(Path file) {
+        String fileName = file.getFileName().toString();
+        int ext = extensionIndex(fileName);
+        if (ext < 0) {
+            return;
+        }
+        String name = fileName.substring(0, fileName.length() - extensions[ext].length());
+        entries.computeIfPresent(name, (key, entry) -> {
+            Path[] files = entry.files().clone();
+            files[ext] = null;
+            Entry updated = new Entry(name, files);
+            return updated.first() == null ? null : updated;
+        });
+    }
+
+    /**
+     * 按名称查找原理图文件，同名时按扩展名的优先顺序选择
+     *
+     * @return 不在索引中时返回 null
+     */
+    public Path resolve(String name) {
+        Entry entry = entries.get(name);
+        return entry == null ? null : entry.first();
+    }
+
+    /**
+     * 查找与输入相近的原理图名称，用于补全和找不到原理图时的提示
+     * 先按前缀匹配（不区分大小写），数量不足时再补充包含输入或按顺序包含输入中所有字符的名称
+     */
+    public List<String> suggest(String input, int limit) {
+        List<String> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+
+        // 所有以 input 开头的名称在排序后是连续的一段，大小写相同时大写排在前面
+        ConcurrentNavigableMap<String, Entry> prefixed = input.isEmpty()
+                ? entries
+                : entries.subMap(input.toUpperCase(Locale.ROOT), true, input + Character.MAX_VALUE, true);
+        for (String name : prefixed.keySet()) {
+            if (result.size() >= limit) {
+                return result;
+            }
+            result.add(name);
+        }
+        if (input.isEmpty()) {
+            return result;
+        }
+
+        String needle = input.toLowerCase(Locale.ROOT);
+        List<String> subsequences = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            String name = entry.getKey();
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.startsWith(needle)) {
+                continue;
+            }
+            if (lower.contains(needle)) {
+                result.add(name);
+                if (result.size() >= limit) {
+                    return result;
+                }
+            } else if (subsequences.size() < limit && isSubsequence(needle, lower)) {
+                subsequences.add(name);
+            }
+        }
+        for (String name : subsequences) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    private int extensionIndex(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < extensions.length; i++) {
+            if (lower.endsWith(extensions[i]) && lower.length() > extensions[i].length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSubsequence(String needle, String text) {
+        int matched = 0;
+        for (int i = 0; i < text.length() && matched < needle.length(); i++) {
+            if (text.charAt(i) == needle.charAt(matched)) {
+                matched++;
+            }
+        }
+        return matched == needle.length();
+    }
+}
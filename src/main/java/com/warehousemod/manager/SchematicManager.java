@@ -1,25 +1,51 @@
 package com.warehousemod.manager;
 
+import com.warehousemod.config.WarehouseConfig;
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.metrics.WarehouseMetrics;
+import com.warehousemod.schematic.LitematicaAdapter;
+import com.warehousemod.schematic.ParallelBlockCounter;
+import com.warehousemod.schematic.SchematicFileReader;
+import com.warehousemod.schematic.SchematicFormat;
+import com.warehousemod.schematic.SchematicFormats;
 import net.minecraft.nbt.NbtCompound;
-import net.minecraft.nbt.NbtIo;
-import net.minecraft.nbt.NbtList;
-import net.minecraft.nbt.NbtSizeTracker;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.WorldSavePath;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class SchematicManager {
+    private static final String[] SCHEMATIC_EXTENSIONS = {".litematic", ".schematic", ".schem", ".nbt"};
+
+    private record ParseKey(Path file, SchematicMaterialCache.Fingerprint fingerprint) {
+    }
+
     private Path schematicsFolder;
     private MinecraftServer server;
+    private final ParallelBlockCounter blockCounter;
+    private final LitematicaAdapter litematica;
+    private final SchematicMaterialCache materialCache;
+    private final SchematicIndex schematicIndex;
+    private final SchematicParseBudget parseBudget;
+    private final SchematicFolderWatcher folderWatcher;
+    // 正在解析的文件，后台预解析和 /c 同时请求同一个文件时只解析一次
+    private final Map<ParseKey, CompletableFuture<MaterialCounts>> parsing = new ConcurrentHashMap<>();
 
     public SchematicManager(MinecraftServer server) {
         this.server = server;
+        WarehouseConfig config = WarehouseConfig.get();
+        this.blockCounter = new ParallelBlockCounter(config.parseParallelism, config.parseParallelMinBlocks);
+        this.litematica = LitematicaAdapter.probe();
+        this.parseBudget = new SchematicParseBudget(config.parseMemoryBudgetMb * 1024L * 1024L);
         this.schematicsFolder = server.getSavePath(WorldSavePath.ROOT).getParent().resolve("syncmatics");
 
         // 添加调试信息
@@ -33,522 +59,290 @@ public class SchematicManager {
                 com.warehousemod.WarehouseMod.LOGGER.error("创建原理图文件夹失败", e);
             }
         }
-    }
 
-    public Map<String, Integer> getSchematicMaterials(String schematicName) throws IOException {
-        Map<String, Integer> materials = new HashMap<>();
+        this.materialCache = new SchematicMaterialCache(schematicsFolder, config.cacheMaxEntries, config.cacheVerifyHash);
+        this.schematicIndex = new SchematicIndex(schematicsFolder, SCHEMATIC_EXTENSIONS);
+        this.schematicIndex.scan();
 
-        // 尝试不同的文件扩展名
-        String[] extensions = {".litematic", ".schematic", ".schem", ".nbt"};
-        Path schematicFile = null;
+        // 后台预解析新上传的原理图，查询时尽量直接命中缓存
+        this.folderWatcher = new SchematicFolderWatcher(schematicsFolder, config.watchDebounceMillis,
+                SchematicManager::isSchematicFile, this::preload, this::forget);
+        this.folderWatcher.start();
+    }
 
-        for (String ext : extensions) {
-            schematicFile = schematicsFolder.resolve(schematicName + ext);
-            if (Files.exists(schematicFile)) {
-                com.warehousemod.WarehouseMod.LOGGER.info("找到原理图文件: {}", schematicFile.getFileName());
-                break;
-            }
-            schematicFile = null;
-        }
+    /**
+     * 关闭后台统计和监听线程，并保存还没有写入的材料缓存索引
+     */
+    public void close() {
+        folderWatcher.close();
+        blockCounter.close();
+        materialCache.flush();
+    }
 
-        if (schematicFile == null) {
-            // 列出可用的原理图文件来帮助调试
-            com.warehousemod.WarehouseMod.LOGGER.warn("未找到原理图文件: {}", schematicName);
-            try {
-                Files.list(schematicsFolder).forEach(file -> {
-                    com.warehousemod.WarehouseMod.LOGGER.info("可用原理图: {}", file.getFileName());
-                });
-            } catch (IOException e) {
-                com.warehousemod.WarehouseMod.LOGGER.error("无法列出原理图文件夹", e);
+    public static boolean isSchematicFile(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase();
+        for (String ext : SCHEMATIC_EXTENSIONS) {
+            if (fileName.endsWith(ext)) {
+                return true;
             }
-            throw new IOException("原理图文件不存在: " + schematicName + " (支持的格式: .litematic, .schematic, .schem, .nbt)");
         }
+        return false;
+    }
 
-        com.warehousemod.WarehouseMod.LOGGER.info("尝试读取原理图文件: {}", schematicFile.toAbsolutePath());
+    /**
+     * 原理图名称补全，只查询内存中的索引
+     */
+    public List<String> suggestSchematics(String input, int limit) {
+        return schematicIndex.suggest(input, limit);
+    }
 
-        // 检查文件大小
+    /**
+     * 在后台线程预先解析原理图并写入缓存
+     */
+    private void preload(Path schematicFile) {
+        schematicIndex.add(schematicFile);
+        SchematicMaterialCache.Fingerprint fingerprint;
         try {
-            long fileSize = Files.size(schematicFile);
-            com.warehousemod.WarehouseMod.LOGGER.info("原理图文件大小: {} 字节", fileSize);
-
-            if (fileSize == 0) {
-                throw new IOException("原理图文件为空");
-            }
+            fingerprint = fingerprint(schematicFile);
         } catch (IOException e) {
-            throw new IOException("无法读取文件大小: " + e.getMessage());
+            com.warehousemod.WarehouseMod.LOGGER.warn("后台索引原理图 {} 失败: {}", schematicFile.getFileName(), e.getMessage());
+            return;
+        }
+        // 已经缓存的文件只比较指纹，不把材料表读进内存，避免挤掉 /c 正在使用的缓存
+        if (materialCache.contains(schematicFile, fingerprint)) {
+            return;
         }
 
-        // 首先尝试使用Litematica API（如果可用）
-        Map<String, Integer> litematicaMaterials = tryParseWithLitematicaAPI(schematicFile.toFile());
-        if (litematicaMaterials != null && !litematicaMaterials.isEmpty()) {
-            com.warehousemod.WarehouseMod.LOGGER.info("使用Litematica API成功解析原理图，找到 {} 种材料", litematicaMaterials.size());
-            return litematicaMaterials;
+        // 和玩家查询分开统计，启动时的批量预解析不会拉高 /c 的延迟分布
+        WarehouseMetrics.Sample sample = WarehouseMetrics.start(WarehouseMetrics.Operation.SCHEMATIC_PRELOAD, schematicFile.getFileName().toString());
+        try {
+            MaterialCounts materials = getMaterials(schematicFile, fingerprint, sample);
+            sample.stop();
+            com.warehousemod.WarehouseMod.LOGGER.info("已在后台索引原理图 {}: {} 种材料", schematicFile.getFileName(), materials.size());
+        } catch (IOException e) {
+            sample.stop(false);
+            com.warehousemod.WarehouseMod.LOGGER.warn("后台索引原理图 {} 失败: {}", schematicFile.getFileName(), e.getMessage());
         }
+    }
 
-        // 如果Litematica API不可用，回退到NBT解析
-        com.warehousemod.WarehouseMod.LOGGER.info("Litematica API不可用，使用NBT解析");
-        return parseWithNBT(schematicFile);
+    private void forget(Path schematicFile) {
+        schematicIndex.remove(schematicFile);
+        materialCache.invalidate(schematicFile);
     }
 
     /**
-     * 尝试使用Litematica API解析原理图
+     * 统计原理图需要的材料，键为物品注册表原始ID
      */
-    private Map<String, Integer> tryParseWithLitematicaAPI(File schematicFile) {
+    public MaterialCounts getSchematicMaterials(String schematicName) throws IOException {
+        WarehouseMetrics.Sample sample = WarehouseMetrics.start(WarehouseMetrics.Operation.SCHEMATIC_MATERIALS, schematicName);
+        boolean success = false;
         try {
-            // 使用反射来调用Litematica API，避免直接依赖
-            Class<?> litematicaSchematicClass = Class.forName("fi.dy.masa.litematica.schematic.LitematicaSchematic");
-
-            // 尝试不同的方法签名
-            java.lang.reflect.Method loadFromFileMethod = null;
-            Object schematic = null;
-
-            try {
-                // 方法1: 尝试带布尔参数的方法 (有些版本需要)
-                loadFromFileMethod = litematicaSchematicClass.getMethod("loadFromFile", File.class, boolean.class);
-                schematic = loadFromFileMethod.invoke(null, schematicFile, false);
-            } catch (NoSuchMethodException e1) {
-                try {
-                    // 方法2: 尝试不带布尔参数的方法
-                    loadFromFileMethod = litematicaSchematicClass.getMethod("loadFromFile", File.class);
-                    schematic = loadFromFileMethod.invoke(null, schematicFile);
-                } catch (NoSuchMethodException e2) {
-                    com.warehousemod.WarehouseMod.LOGGER.warn("Litematica API中没有找到loadFromFile方法");
-                    return null;
-                }
-            }
-
-            if (schematic == null) {
-                com.warehousemod.WarehouseMod.LOGGER.warn("Litematica Schematic加载失败，返回null");
-                return null;
-            }
-
-            // 获取材料列表 - 尝试不同的方法名
-            java.lang.reflect.Method getMaterialListMethod = null;
-            Map<?, ?> rawMaterials = null;
-
-            try {
-                // 方法1: 尝试getMaterialList
-                getMaterialListMethod = litematicaSchematicClass.getMethod("getMaterialList");
-                rawMaterials = (Map<?, ?>) getMaterialListMethod.invoke(schematic);
-            } catch (NoSuchMethodException e1) {
-                try {
-                    // 方法2: 尝试getBlockCounts
-                    getMaterialListMethod = litematicaSchematicClass.getMethod("getBlockCounts");
-                    rawMaterials = (Map<?, ?>) getMaterialListMethod.invoke(schematic);
-                } catch (NoSuchMethodException e2) {
-                    com.warehousemod.WarehouseMod.LOGGER.warn("Litematica API中没有找到材料列表方法");
-                    return null;
-                }
-            }
-
-            if (rawMaterials == null || rawMaterials.isEmpty()) {
-                com.warehousemod.WarehouseMod.LOGGER.warn("Litematica 返回空的材料列表");
-                return null;
-            }
-
-            // 转换材料格式
-            Map<String, Integer> materials = new HashMap<>();
-            for (Map.Entry<?, ?> entry : rawMaterials.entrySet()) {
-                try {
-                    String blockName = convertToTranslationKey(entry.getKey().toString());
-                    Integer count = null;
-
-                    if (entry.getValue() instanceof Integer) {
-                        count = (Integer) entry.getValue();
-                    } else if (entry.getValue() instanceof Long) {
-                        count = ((Long) entry.getValue()).intValue();
-                    } else {
-                        count = 1; // 默认值
-                    }
-
-                    materials.put(blockName, count);
-                } catch (Exception e) {
-                    com.warehousemod.WarehouseMod.LOGGER.warn("转换材料时出错: {} -> {}", entry.getKey(), entry.getValue());
-                }
-            }
-
-            com.warehousemod.WarehouseMod.LOGGER.info("Litematica API解析成功: {} 种材料", materials.size());
+            MaterialCounts materials = findSchematicMaterials(schematicName, sample);
+            success = true;
             return materials;
-
-        } catch (ClassNotFoundException e) {
-            com.warehousemod.WarehouseMod.LOGGER.info("Litematica模组未安装，无法使用API");
-            return null;
-        } catch (Exception e) {
-            com.warehousemod.WarehouseMod.LOGGER.warn("使用Litematica API解析失败: {}", e.getMessage());
-            e.printStackTrace(); // 打印完整堆栈跟踪以帮助调试
-            return null;
+        } finally {
+            sample.stop(success);
         }
     }
-    /**
-     * 将方块状态转换为翻译键格式
-     */
-    private String convertToTranslationKey(String blockState) {
-        // 例子: "minecraft:stone" -> "block.minecraft.stone"
-        // 例子: "minecraft:oak_planks" -> "block.minecraft.oak_planks"
 
-        if (blockState.contains("[")) {
-            // 移除方块状态属性，如"minecraft:oak_stairs[facing=east,half=top,shape=straight]"
-            blockState = blockState.substring(0, blockState.indexOf("["));
+    private MaterialCounts findSchematicMaterials(String schematicName, WarehouseMetrics.Sample sample) throws IOException {
+        Path schematicFile = schematicIndex.resolve(schematicName);
+        if (schematicFile == null) {
+            // 文件夹监听不可用或刚上传还没有被索引时，直接检查一次磁盘
+            schematicFile = probeSchematicFile(schematicName);
         }
 
-        if (blockState.startsWith("minecraft:")) {
-            return "block.minecraft." + blockState.substring(10);
+        if (schematicFile == null) {
+            List<String> similar = schematicIndex.suggest(schematicName, 3);
+            com.warehousemod.WarehouseMod.LOGGER.warn("未找到原理图文件: {}（已索引 {} 个原理图）", schematicName, schematicIndex.size());
+            throw new IOException("原理图文件不存在: " + schematicName
+                    + (similar.isEmpty() ? " (支持的格式: .litematic, .schematic, .schem, .nbt)" : "，你是不是想找: " + String.join(", ", similar)));
         }
 
-        // 对于其他命名空间的方块，保持原样
-        return blockState.replace(":", ".");
-    }
-
-    /**
-     * 使用NBT解析作为备选方案
-     */
-    private Map<String, Integer> parseWithNBT(Path schematicFile) {
-        NbtCompound nbt = null;
-        String fileName = schematicFile.getFileName().toString().toLowerCase();
-
         try {
-            // 方法1: 使用标准NBT读取
-            com.warehousemod.WarehouseMod.LOGGER.info("尝试标准NBT读取...");
-            nbt = NbtIo.read(schematicFile);
-            com.warehousemod.WarehouseMod.LOGGER.info("标准NBT读取成功");
-        } catch (Exception e1) {
-            com.warehousemod.WarehouseMod.LOGGER.warn("标准NBT读取失败: {}", e1.getMessage());
-
-            try {
-                // 方法2: 尝试读取压缩的NBT文件，使用无限制的NBT大小跟踪器
-                com.warehousemod.WarehouseMod.LOGGER.info("尝试压缩NBT读取...");
-                nbt = NbtIo.readCompressed(schematicFile, NbtSizeTracker.ofUnlimitedBytes());
-                com.warehousemod.WarehouseMod.LOGGER.info("压缩NBT读取成功");
-            } catch (Exception e2) {
-                com.warehousemod.WarehouseMod.LOGGER.warn("压缩NBT读取失败: {}", e2.getMessage());
-
-                // 如果所有方法都失败，返回示例数据
-                com.warehousemod.WarehouseMod.LOGGER.error("所有NBT读取方法都失败，使用示例数据");
-                return getExampleMaterials();
-            }
-        }
-
-        if (nbt == null) {
-            com.warehousemod.WarehouseMod.LOGGER.error("无法读取原理图 NBT 数据 - 返回 null");
-            return getExampleMaterials();
-        }
-
-        com.warehousemod.WarehouseMod.LOGGER.info("成功读取 NBT 数据，包含 {} 个键: {}", nbt.getKeys().size(), nbt.getKeys());
-
-        // 根据文件扩展名选择解析方法
-        Map<String, Integer> materials;
-        if (fileName.endsWith(".litematic")) {
-            com.warehousemod.WarehouseMod.LOGGER.info("使用 Litematica 格式解析器");
-            materials = parseLitematicaFormat(nbt);
-        } else if (fileName.endsWith(".schem") || fileName.endsWith(".schematic")) {
-            // 解析现代原理图格式 (Sponge Schematic Format)
-            if (nbt.contains("Version")) {
-                com.warehousemod.WarehouseMod.LOGGER.info("使用现代原理图格式解析器");
-                materials = parseModernSchematic(nbt);
-            }
-            // 解析旧版原理图格式
-            else if (nbt.contains("Blocks")) {
-                com.warehousemod.WarehouseMod.LOGGER.info("使用旧版原理图格式解析器");
-                materials = parseLegacySchematic(nbt);
-            } else {
-                // 尝试自动检测格式
-                com.warehousemod.WarehouseMod.LOGGER.info("尝试自动检测格式");
-                materials = tryAutoDetectFormat(nbt, fileName);
+            return getMaterials(schematicFile, fingerprint(schematicFile), sample);
+        } catch (IOException e) {
+            if (!Files.exists(schematicFile)) {
+                // 索引中的文件已被删除
+                forget(schematicFile);
             }
-        } else {
-            // 对于.nbt或其他格式，尝试自动检测
-            com.warehousemod.WarehouseMod.LOGGER.info("尝试自动检测格式");
-            materials = tryAutoDetectFormat(nbt, fileName);
+            throw e;
         }
-
-        com.warehousemod.WarehouseMod.LOGGER.info("NBT解析结果: {} 种材料", materials.size());
-        return materials;
-    }
-
-    private Map<String, Integer> getExampleMaterials() {
-        Map<String, Integer> exampleMaterials = new HashMap<>();
-        exampleMaterials.put("block.minecraft.stone", 64);
-        exampleMaterials.put("block.minecraft.oak_planks", 32);
-        exampleMaterials.put("block.minecraft.glass", 16);
-        exampleMaterials.put("item.minecraft.stick", 8);
-        return exampleMaterials;
     }
 
-    private Map<String, Integer> tryAutoDetectFormat(NbtCompound nbt, String fileName) {
-        com.warehousemod.WarehouseMod.LOGGER.info("尝试自动检测原理图格式: {}", fileName);
-
-        // 检查常见格式的特征
-        if (nbt.contains("Regions") && nbt.contains("Metadata")) {
-            com.warehousemod.WarehouseMod.LOGGER.info("检测到 Litematica 格式特征");
-            return parseLitematicaFormat(nbt);
-        } else if (nbt.contains("Version") && nbt.contains("Palette")) {
-            com.warehousemod.WarehouseMod.LOGGER.info("检测到现代原理图格式特征");
-            return parseModernSchematic(nbt);
-        } else if (nbt.contains("Blocks") && nbt.contains("Data")) {
-            com.warehousemod.WarehouseMod.LOGGER.info("检测到旧版原理图格式特征");
-            return parseLegacySchematic(nbt);
-        } else {
-            com.warehousemod.WarehouseMod.LOGGER.warn("无法自动检测原理图格式，使用示例数据");
-            return getExampleMaterials();
+    private Path probeSchematicFile(String schematicName) {
+        for (String ext : SCHEMATIC_EXTENSIONS) {
+            Path file = schematicsFolder.resolve(schematicName + ext);
+            if (Files.isRegularFile(file)) {
+                schematicIndex.add(file);
+                return file;
+            }
         }
+        return null;
     }
 
-    private Map<String, Integer> parseLitematicaFormat(NbtCompound nbt) {
-        Map<String, Integer> materials = new HashMap<>();
+    private SchematicMaterialCache.Fingerprint fingerprint(Path schematicFile) throws IOException {
+        com.warehousemod.WarehouseMod.LOGGER.info("尝试读取原理图文件: {}", schematicFile.toAbsolutePath());
 
+        // 检查文件大小
+        SchematicMaterialCache.Fingerprint fingerprint;
         try {
-            com.warehousemod.WarehouseMod.LOGGER.info("开始解析 Litematica 格式");
+            fingerprint = materialCache.fingerprint(schematicFile);
+            com.warehousemod.WarehouseMod.LOGGER.info("原理图文件大小: {} 字节", fingerprint.size());
 
-            // 首先尝试解析实际的方块数据
-            Map<String, Integer> actualMaterials = tryParseActualBlocks(nbt);
-            if (actualMaterials != null && !actualMaterials.isEmpty()) {
-                com.warehousemod.WarehouseMod.LOGGER.info("成功解析实际方块数据: {} 种材料", actualMaterials.size());
-                return actualMaterials;
-            }
-
-            // 如果实际方块解析失败，回退到基于大小的估算
-            com.warehousemod.WarehouseMod.LOGGER.info("无法解析实际方块数据，使用基于大小的估算");
-
-            // Litematica 格式解析
-            if (nbt.contains("Metadata")) {
-                NbtCompound metadata = nbt.getCompound("Metadata");
-                String author = metadata.contains("Author") ? metadata.getString("Author") : "未知";
-                String description = metadata.contains("Description") ? metadata.getString("Description") : "无描述";
-                com.warehousemod.WarehouseMod.LOGGER.info("Litematica 文件作者: {}", author);
-                com.warehousemod.WarehouseMod.LOGGER.info("Litematica 文件描述: {}", description);
-            } else {
-                com.warehousemod.WarehouseMod.LOGGER.warn("Litematica 文件缺少 Metadata 标签");
-            }
-
-            if (nbt.contains("Regions")) {
-                NbtCompound regions = nbt.getCompound("Regions");
-                com.warehousemod.WarehouseMod.LOGGER.info("找到 {} 个区域", regions.getKeys().size());
-
-                // 遍历所有区域
-                for (String regionName : regions.getKeys()) {
-                    NbtCompound region = regions.getCompound(regionName);
-
-                    // 解析区域信息
-                    if (region.contains("Position") && region.contains("Size")) {
-                        NbtCompound position = region.getCompound("Position");
-                        NbtCompound size = region.getCompound("Size");
-
-                        // 使用绝对值计算大小，避免负数
-                        int sizeX = Math.abs(size.getInt("x"));
-                        int sizeY = Math.abs(size.getInt("y"));
-                        int sizeZ = Math.abs(size.getInt("z"));
-                        int totalBlocks = sizeX * sizeY * sizeZ;
-
-                        com.warehousemod.WarehouseMod.LOGGER.info("区域 {}: 大小 {}x{}x{} (绝对值), 总方块数: {}",
-                                regionName, sizeX, sizeY, sizeZ, totalBlocks);
-
-                        if (totalBlocks == 0) {
-                            com.warehousemod.WarehouseMod.LOGGER.warn("区域 {} 总方块数为0，使用示例数据", regionName);
-                            return getExampleMaterials();
-                        }
-
-                        // 基于区域大小生成估算材料 - 使用更合理的比例
-                        materials.put("block.minecraft.stone", Math.max(1, totalBlocks / 10));
-                        materials.put("block.minecraft.oak_planks", Math.max(1, totalBlocks / 20));
-                        materials.put("block.minecraft.glass", Math.max(1, totalBlocks / 40));
-                        materials.put("item.minecraft.stick", Math.max(1, totalBlocks / 80));
-
-                        // 添加更多常见材料
-                        materials.put("block.minecraft.dirt", Math.max(1, totalBlocks / 15));
-                        materials.put("block.minecraft.cobblestone", Math.max(1, totalBlocks / 12));
-                        materials.put("block.minecraft.oak_log", Math.max(1, totalBlocks / 25));
-
-                    } else {
-                        com.warehousemod.WarehouseMod.LOGGER.warn("区域 {} 缺少 Position 或 Size 标签", regionName);
-                        // 添加默认材料
-                        materials.put("block.minecraft.stone", 64);
-                        materials.put("block.minecraft.oak_planks", 32);
-                        materials.put("block.minecraft.dirt", 16);
-                    }
-
-                    com.warehousemod.WarehouseMod.LOGGER.info("区域 {} 解析完成，添加 {} 种材料", regionName, materials.size());
-                }
-            } else {
-                com.warehousemod.WarehouseMod.LOGGER.warn("Litematica 文件缺少 Regions 标签，使用示例数据");
-                // 返回示例数据
-                return getExampleMaterials();
+            if (fingerprint.size() == 0) {
+                throw new IOException("原理图文件为空");
             }
-        } catch (Exception e) {
-            com.warehousemod.WarehouseMod.LOGGER.error("解析 Litematica 文件失败", e);
-            // 返回示例数据而不是抛出异常
-            return getExampleMaterials();
+        } catch (IOException e) {
+            throw new IOException("无法读取文件大小: " + e.getMessage());
         }
-
-        return materials;
+        return fingerprint;
     }
 
     /**
-     * 尝试从Litematica NBT数据中解析实际方块
+     * @param sample 记录解析时读取的字节数，使用缓存时不读取文件
      */
-    private Map<String, Integer> tryParseActualBlocks(NbtCompound nbt) {
-        Map<String, Integer> materials = new HashMap<>();
+    private MaterialCounts getMaterials(Path schematicFile, SchematicMaterialCache.Fingerprint fingerprint,
+                                        WarehouseMetrics.Sample sample) throws IOException {
+        // 文件未改变时直接使用缓存的结果
+        MaterialCounts cached = materialCache.get(schematicFile, fingerprint);
+        if (cached != null) {
+            WarehouseMetrics.cacheHit(WarehouseMetrics.Cache.SCHEMATIC_MATERIALS);
+            com.warehousemod.WarehouseMod.LOGGER.info("使用缓存的材料统计: {} 种材料", cached.size());
+            return cached;
+        }
+        WarehouseMetrics.cacheMiss(WarehouseMetrics.Cache.SCHEMATIC_MATERIALS);
 
-        try {
-            if (nbt.contains("Regions")) {
-                NbtCompound regions = nbt.getCompound("Regions");
-
-                for (String regionName : regions.getKeys()) {
-                    NbtCompound region = regions.getCompound(regionName);
-
-                    // 解析方块调色板和方块状态
-                    if (region.contains("BlockStatePalette") && region.contains("BlockStates")) {
-                        NbtList palette = region.getList("BlockStatePalette", 10);
-                        long[] blockStates = region.getLongArray("BlockStates");
-
-                        com.warehousemod.WarehouseMod.LOGGER.info("区域 {}: 调色板大小 {}, 方块状态长度 {}",
-                                regionName, palette.size(), blockStates.length);
-
-                        // 统计每个方块类型的数量
-                        for (long blockState : blockStates) {
-                            int paletteIndex = (int) (blockState & 0xFFFF);
-                            if (paletteIndex >= 0 && paletteIndex < palette.size()) {
-                                NbtCompound blockStateNbt = palette.getCompound(paletteIndex);
-                                if (blockStateNbt.contains("Name")) {
-                                    String blockName = "block.minecraft." + blockStateNbt.getString("Name").replace("minecraft:", "");
-                                    materials.put(blockName, materials.getOrDefault(blockName, 0) + 1);
-                                }
-                            }
-                        }
-                    }
+        ParseKey key = new ParseKey(schematicFile, fingerprint);
+        CompletableFuture<MaterialCounts> parse = new CompletableFuture<>();
+        CompletableFuture<MaterialCounts> running = parsing.putIfAbsent(key, parse);
+        if (running != null) {
+            com.warehousemod.WarehouseMod.LOGGER.info("原理图 {} 正在被解析，等待结果", schematicFile.getFileName());
+            try {
+                return await(running);
+            } catch (InterruptedIOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
                 }
+                // 解析它的线程被取消了，由当前线程重新解析
+                return getMaterials(schematicFile, fingerprint, sample);
             }
+        }
 
+        try {
+            // 另一个线程可能在上面的查询之后刚刚解析完
+            MaterialCounts materials = materialCache.get(schematicFile, fingerprint);
+            if (materials == null) {
+                materials = parse(schematicFile, fingerprint, sample);
+            }
+            parse.complete(materials);
             return materials;
-        } catch (Exception e) {
-            com.warehousemod.WarehouseMod.LOGGER.warn("解析实际方块数据失败: {}", e.getMessage());
-            return null;
+        } catch (Throwable e) {
+            parse.completeExceptionally(e);
+            throw e;
+        } finally {
+            parsing.remove(key, parse);
         }
     }
 
-    private Map<String, Integer> parseModernSchematic(NbtCompound nbt) {
-        Map<String, Integer> materials = new HashMap<>();
-
-        // 解析方块状态
-        if (nbt.contains("Palette") && nbt.contains("BlockData")) {
-            NbtCompound palette = nbt.getCompound("Palette");
-            byte[] blockData = nbt.getByteArray("BlockData");
-
-            // 统计每个方块类型的数量
-            for (byte blockStateId : blockData) {
-                int stateId = blockStateId & 0xFF;
-                // 从调色板获取方块状态
-                for (String blockState : palette.getKeys()) {
-                    if (palette.getInt(blockState) == stateId) {
-                        String blockName = extractBlockName(blockState);
-                        materials.put(blockName, materials.getOrDefault(blockName, 0) + 1);
-                        break;
-                    }
-                }
-            }
+    private MaterialCounts parse(Path schematicFile, SchematicMaterialCache.Fingerprint fingerprint, WarehouseMetrics.Sample sample) throws IOException {
+        // 预留解析需要的内存，同时解析的大文件过多时在这里排队
+        String fileName = schematicFile.getFileName().toString();
+        long estimate = SchematicParseBudget.estimate(fileName, SchematicFileReader.uncompressedSize(schematicFile));
+        MaterialCounts materials;
+        try (SchematicParseBudget.Reservation reservation = parseBudget.reserve(fileName, estimate)) {
+            materials = parseMaterials(schematicFile, reservation.bytes());
         }
+        WarehouseMetrics.bytesRead(fingerprint.size());
+        sample.bytes(fingerprint.size());
+        return materialCache.put(schematicFile, fingerprint, materials);
+    }
 
-        // 解析方块实体（如箱子内容）
-        if (nbt.contains("BlockEntities")) {
-            NbtList blockEntities = nbt.getList("BlockEntities", 10);
-            for (int i = 0; i < blockEntities.size(); i++) {
-                NbtCompound blockEntity = blockEntities.getCompound(i);
-                if (blockEntity.contains("Items")) {
-                    NbtList items = blockEntity.getList("Items", 10);
-                    for (int j = 0; j < items.size(); j++) {
-                        NbtCompound item = items.getCompound(j);
-                        if (item.contains("id")) {
-                            String itemId = item.getString("id").replace("minecraft:", "");
-                            int count = item.contains("Count") ? item.getInt("Count") : 1;
-                            materials.put("item.minecraft." + itemId,
-                                    materials.getOrDefault("item.minecraft." + itemId, 0) + count);
-                        }
-                    }
-                }
+    /**
+     * 等待其他线程的解析结果，解析失败时抛出同样的异常
+     *
+     * @throws InterruptedIOException 当前线程或解析它的线程被中断
+     */
+    private static MaterialCounts await(CompletableFuture<MaterialCounts> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待原理图解析时被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedIOException interrupted) {
+                throw new InterruptedIOException(interrupted.getMessage());
+            }
+            if (cause instanceof IOException io) {
+                throw new IOException(io.getMessage(), io);
             }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
         }
-
-        return materials;
     }
 
-    private Map<String, Integer> parseLegacySchematic(NbtCompound nbt) {
-        Map<String, Integer> materials = new HashMap<>();
-
-        // 解析旧版原理图格式
-        byte[] blocks = nbt.getByteArray("Blocks");
-        byte[] data = nbt.contains("Data") ? nbt.getByteArray("Data") : new byte[blocks.length];
+    /**
+     * 解析内存预算的上限和剩余量（字节）
+     */
+    public long getParseBudgetLimit() {
+        return parseBudget.limitBytes();
+    }
 
-        for (int i = 0; i < blocks.length; i++) {
-            int blockId = blocks[i] & 0xFF;
-            if (blockId != 0) {
-                String blockName = getLegacyBlockName(blockId, data[i]);
-                materials.put(blockName, materials.getOrDefault(blockName, 0) + 1);
-            }
-        }
+    public long getParseBudgetAvailable() {
+        return parseBudget.availableBytes();
+    }
 
-        // 解析方块实体
-        if (nbt.contains("TileEntities")) {
-            NbtList tileEntities = nbt.getList("TileEntities", 10);
-            for (int i = 0; i < tileEntities.size(); i++) {
-                NbtCompound tileEntity = tileEntities.getCompound(i);
-                if (tileEntity.contains("Items")) {
-                    NbtList items = tileEntity.getList("Items", 10);
-                    for (int j = 0; j < items.size(); j++) {
-                        NbtCompound item = items.getCompound(j);
-                        if (item.contains("id")) {
-                            String itemId = item.getString("id").replace("minecraft:", "");
-                            int count = item.contains("Count") ? item.getByte("Count") : 1;
-                            materials.put("item.minecraft." + itemId,
-                                    materials.getOrDefault("item.minecraft." + itemId, 0) + count);
-                        }
-                    }
-                }
+    /**
+     * @param maxBytes 读取成对象的 NBT 数据最多占用的字节数
+     */
+    private MaterialCounts parseMaterials(Path schematicFile, long maxBytes) throws IOException {
+        // 首先尝试使用Litematica API（启动时已确定是否可用）
+        if (litematica.isAvailable()) {
+            MaterialCounts litematicaMaterials = WarehouseMetrics.time(WarehouseMetrics.Operation.PARSE_LITEMATICA_API, schematicFile.getFileName().toString(),
+                    () -> litematica.loadMaterials(schematicFile.toFile()));
+            if (litematicaMaterials != null && !litematicaMaterials.isEmpty()) {
+                com.warehousemod.WarehouseMod.LOGGER.info("使用Litematica API成功解析原理图，找到 {} 种材料", litematicaMaterials.size());
+                return litematicaMaterials;
             }
         }
 
-        return materials;
-    }
-
-    private String extractBlockName(String blockState) {
-        // 从方块状态字符串中提取方块名称
-        // 例如: "minecraft:stone" -> "block.minecraft.stone"
-        if (blockState.contains("[")) {
-            blockState = blockState.substring(0, blockState.indexOf("["));
-        }
-        return "block.minecraft." + blockState.replace("minecraft:", "");
+        return parseWithFormats(schematicFile, maxBytes);
     }
 
-    private String getLegacyBlockName(int blockId, byte data) {
-        // 旧版方块ID到名称的映射
-        switch (blockId) {
-            case 1: return data == 0 ? "block.minecraft.stone" :
-                    data == 1 ? "block.minecraft.granite" :
-                            data == 2 ? "block.minecraft.polished_granite" :
-                                    data == 3 ? "block.minecraft.diorite" :
-                                            data == 4 ? "block.minecraft.polished_diorite" :
-                                                    data == 5 ? "block.minecraft.andesite" :
-                                                            data == 6 ? "block.minecraft.polished_andesite" : "block.minecraft.stone";
-            case 2: return "block.minecraft.grass_block";
-            case 3: return "block.minecraft.dirt";
-            case 4: return "block.minecraft.cobblestone";
-            case 5: return "block.minecraft.oak_planks";
-            case 17: return "block.minecraft.oak_log";
-            case 20: return "block.minecraft.glass";
-            case 35: return getWoolColor(data);
-            // 添加更多方块映射...
-            default: return "block.minecraft.unknown_" + blockId;
+    /**
+     * 读取文件中所有已注册格式需要的标签，交给第一个能识别这份数据的格式统计
+     */
+    private MaterialCounts parseWithFormats(Path schematicFile, long maxBytes) throws IOException {
+        String fileName = schematicFile.getFileName().toString();
+
+        // 根据文件头判断是否压缩，文件只读取一次
+        NbtCompound nbt = SchematicFileReader.read(schematicFile, SchematicFormats.tags(), maxBytes);
+        SchematicFormat format = SchematicFormats.find(fileName, nbt);
+        if (format == null) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("无法识别原理图 {} 的格式，根标签: {}", fileName, nbt.getKeys());
+            throw new IOException("无法识别的原理图格式: " + fileName + " (支持: " + SchematicFormats.names() + ")");
         }
-    }
+        com.warehousemod.WarehouseMod.LOGGER.info("使用 {} 格式解析器", format.name());
 
-    private String getWoolColor(byte data) {
-        String[] colors = {
-                "white", "orange", "magenta", "light_blue", "yellow", "lime",
-                "pink", "gray", "light_gray", "cyan", "purple", "blue",
-                "brown", "green", "red", "black"
-        };
-        int colorIndex = data & 0xF;
-        if (colorIndex < colors.length) {
-            return "block.minecraft." + colors[colorIndex] + "_wool";
+        WarehouseMetrics.Sample sample = WarehouseMetrics.start(format.operation(), fileName);
+        boolean success = false;
+        try {
+            MaterialCounts materials = format.count(nbt, blockCounter);
+            success = true;
+            com.warehousemod.WarehouseMod.LOGGER.info("NBT解析结果: {} 种材料", materials.size());
+            return materials;
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("解析原理图时被中断");
+        } catch (RuntimeException e) {
+            throw new IOException(format.name() + " 原理图解析失败: " + e.getMessage(), e);
+        } finally {
+            sample.stop(success);
         }
-        return "block.minecraft.white_wool";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,408 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 原理图材料缓存
+ * 以相对路径 + 大小 + 修改时间（可选内容校验和）作为指纹，内存中按 LRU 淘汰，
+ * 同时保存为原理图文件夹中的索引文件，重启后仍然有效
+ * 索引文件中的物品以ID字符串保存，加载时再转换为当前的原始ID
+ * 缓存变化后延迟一段时间再写索引文件，多次变化合并为一次写入
+ * 被 LRU 淘汰的条目仍然保留在索引文件中，再次查询时从文件读回，不需要重新解析原理图
+ */
+public class SchematicMaterialCache {
+    private static final String INDEX_FILE = ".warehousemod_materials.idx";
+    private static final int INDEX_MAGIC = 0x57484D43;
+    private static final int INDEX_VERSION = 2;
+    // 缓存变化后等待多久再写索引文件，批量解析时只写一次
+    private static final long FLUSH_DELAY_MILLIS = 5000;
+
+    /**
+     * 文件指纹，hash 为 0 表示未计算内容校验和
+     */
+    public record Fingerprint(long size, long modifiedTime, long hash) {
+    }
+
+    private record Entry(Fingerprint fingerprint, MaterialCounts materials) {
+    }
+
+    private final Path folder;
+    private final Path indexFile;
+    private final boolean verifyHash;
+    private final int maxEntries;
+    // 以下字段由 this 保护
+    // 内存中的材料表，按 LRU 淘汰
+    private final LinkedHashMap<String, Entry> entries;
+    // 所有已缓存文件的指纹（包括已被 LRU 淘汰、只保存在索引文件中的），不受 LRU 容量限制
+    private final Map<String, Fingerprint> fingerprints = new HashMap<>();
+    // 还没有写入索引文件的条目，写入之前即使被 LRU 淘汰也不会丢失
+    private final Map<String, Entry> unsaved = new HashMap<>();
+    // 内存中的缓存还没有写入索引文件
+    private boolean dirty;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // 读写索引文件时持有，和查询用的锁分开，写文件期间查询内存中的条目不会被阻塞
+    private final Object writeLock = new Object();
+
+    public SchematicMaterialCache(Path folder, int maxEntries, boolean verifyHash) {
+        this.folder = folder;
+        this.indexFile = folder.resolve(INDEX_FILE);
+        this.verifyHash = verifyHash;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        loadIndex();
+    }
+
+    /**
+     * 计算文件指纹
+     */
+    public Fingerprint fingerprint(Path file) throws IOException {
+        long size = Files.size(file);
+        long modifiedTime = Files.getLastModifiedTime(file).toMillis();
+        long hash = 0;
+
+        if (verifyHash) {
+            CRC32C crc = new CRC32C();
+            byte[] buffer = new byte[65536];
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+            // 与 "未计算" 区分开
+            hash = crc.getValue() | (1L << 32);
+        }
+
+        return new Fingerprint(size, modifiedTime, hash);
+    }
+
+    /**
+     * 文件是否已经缓存，只比较指纹，不把材料表读进内存
+     */
+    public synchronized boolean contains(Path file, Fingerprint fingerprint) {
+        return fingerprint.equals(fingerprints.get(key(file)));
+    }
+
+    /**
+     * 查询缓存，指纹不一致时返回 null
+     * 返回的材料表是共享的，调用者不能修改
+     */
+    public MaterialCounts get(Path file, Fingerprint fingerprint) {
+        String key = key(file);
+        synchronized (this) {
+            if (!fingerprint.equals(fingerprints.get(key))) {
+                return null;
+            }
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = unsaved.get(key);
+                if (entry != null) {
+                    entries.put(key, entry);
+                }
+            }
+            if (entry != null && entry.fingerprint().equals(fingerprint)) {
+                return entry.materials();
+            }
+        }
+
+        // 已被 LRU 淘汰，从索引文件读回
+        MaterialCounts materials = readEntry(key, fingerprint);
+        if (materials == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (fingerprint.equals(fingerprints.get(key))) {
+                entries.put(key, new Entry(fingerprint, materials));
+            }
+        }
+        return materials;
+    }
+
+    /**
+     * 写入缓存，返回缓存中保存的材料表，索引文件稍后在后台更新
+     */
+    public MaterialCounts put(Path file, Fingerprint fingerprint, MaterialCounts materials) {
+        MaterialCounts stored = materials.copy();
+        String key = key(file);
+        Entry entry = new Entry(fingerprint, stored);
+        synchronized (this) {
+            entries.put(key, entry);
+            fingerprints.put(key, fingerprint);
+            unsaved.put(key, entry);
+            dirty = true;
+        }
+        scheduleFlush();
+        return stored;
+    }
+
+    /**
+     * 移除某个文件的缓存
+     */
+    public void invalidate(Path file) {
+        String key = key(file);
+        boolean removed;
+        synchronized (this) {
+            entries.remove(key);
+            unsaved.remove(key);
+            removed = fingerprints.remove(key) != null;
+            dirty |= removed;
+        }
+        if (removed) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 立即把还没有保存的变化写入索引文件，服务器关闭时调用
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            Map<String, Fingerprint> keep;
+            Map<String, Entry> written;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                keep = new HashMap<>(fingerprints);
+                written = new HashMap<>(unsaved);
+                dirty = false;
+            }
+
+            boolean saved = saveIndex(keep, written);
+            synchronized (this) {
+                if (saved) {
+                    // 写入期间又被更新的条目留到下一次写入
+                    written.forEach(unsaved::remove);
+                } else {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            CompletableFuture.delayedExecutor(FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS).execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 缓存键是相对原理图文件夹的路径，不同子文件夹中的同名文件不会互相覆盖
+     */
+    private String key(Path file) {
+        return folder.relativize(file).toString().replace('\\', '/');
+    }
+
+    private DataInputStream openIndex() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(indexFile))));
+        if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+            in.close();
+            return null;
+        }
+        return in;
+    }
+
+    private void loadIndex() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        try (DataInputStream in = openIndex()) {
+            if (in == null) {
+                com.warehousemod.WarehouseMod.LOGGER.warn("材料缓存索引版本不匹配，忽略");
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Fingerprint fingerprint = readFingerprint(in);
+                // 跳过已经被删除的原理图
+                if (!Files.exists(folder.resolve(name))) {
+                    skipMaterials(in);
+                    continue;
+                }
+                fingerprints.put(name, fingerprint);
+                // 只有最近的条目留在内存中，其余的需要时再从文件读取
+                if (count - i <= maxEntries) {
+                    entries.put(name, new Entry(fingerprint, readMaterials(in)));
+                } else {
+                    skipMaterials(in);
+                }
+            }
+
+            com.warehousemod.WarehouseMod.LOGGER.info("已加载材料缓存索引: {} 个原理图", fingerprints.size());
+        } catch (IOException e) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("读取材料缓存索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从索引文件中读取一个条目的材料表，文件中没有或指纹不一致时返回 null
+     */
+    private MaterialCounts readEntry(String key, Fingerprint fingerprint) {
+        synchronized (writeLock) {
+            try (DataInputStream in = openIndex()) {
+                if (in == null) {
+                    return null;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    Fingerprint stored = readFingerprint(in);
+                    if (name.equals(key) && stored.equals(fingerprint)) {
+                        return readMaterials(in);
+                    }
+                    skipMaterials(in);
+                }
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                com.warehousemod.WarehouseMod.LOGGER.warn("读取材料缓存索引失败: {}", e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 写出 keep 中所有条目：written 中的使用内存里的材料表，其余的从旧的索引文件复制
+     * 在调用者的线程上写文件，不持有查询用的锁
+     *
+     * @return 是否写入成功
+     */
+    private boolean saveIndex(Map<String, Fingerprint> keep, Map<String, Entry> written) {
+        Path tempFile = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+
+        try {
+            // 条目数量写在最前面，先把要保留的旧条目复制到内存中
+            ByteArrayOutputStream copied = new ByteArrayOutputStream();
+            int copiedCount = copyEntries(keep, written, new DataOutputStream(copied));
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(copiedCount + written.size());
+                copied.writeTo(out);
+                for (Map.Entry<String, Entry> entry : written.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    writeFingerprint(out, entry.getValue().fingerprint());
+                    MaterialCounts materials = entry.getValue().materials();
+                    int[] itemIds = materials.itemIds();
+                    out.writeInt(itemIds.length);
+                    for (int itemId : itemIds) {
+                        out.writeUTF(MaterialKeys.itemName(itemId));
+                        out.writeInt(materials.get(itemId));
+                    }
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("保存材料缓存索引失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 从旧的索引文件复制仍然有效、且这次没有重新写入的条目，原样复制物品ID字符串
+     *
+     * @return 复制的条目数量
+     */
+    private int copyEntries(Map<String, Fingerprint> keep, Map<String, Entry> written, DataOutputStream out) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return 0;
+        }
+
+        int copiedCount = 0;
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(record);
+        try (DataInputStream in = openIndex()) {
+            if (in == null) {
+                return 0;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Fingerprint fingerprint = readFingerprint(in);
+                if (written.containsKey(name) || !fingerprint.equals(keep.get(name))) {
+                    skipMaterials(in);
+                    continue;
+                }
+                // 整个条目读完后再写出，旧文件在条目中间结束时不会写出半个条目
+                record.reset();
+                recordOut.writeUTF(name);
+                writeFingerprint(recordOut, fingerprint);
+                int materialCount = in.readInt();
+                recordOut.writeInt(materialCount);
+                for (int j = 0; j < materialCount; j++) {
+                    recordOut.writeUTF(in.readUTF());
+                    recordOut.writeInt(in.readInt());
+                }
+                record.writeTo(out);
+                copiedCount++;
+            }
+        } catch (EOFException e) {
+            // 旧文件不完整时只保留已经读到的条目
+            com.warehousemod.WarehouseMod.LOGGER.warn("材料缓存索引不完整，已复制 {} 个条目", copiedCount);
+        }
+        return copiedCount;
+    }
+
+    private static Fingerprint readFingerprint(DataInputStream in) throws IOException {
+        return new Fingerprint(in.readLong(), in.readLong(), in.readLong());
+    }
+
+    private static void writeFingerprint(DataOutputStream out, Fingerprint fingerprint) throws IOException {
+        out.writeLong(fingerprint.size());
+        out.writeLong(fingerprint.modifiedTime());
+        out.writeLong(fingerprint.hash());
+    }
+
+    private static MaterialCounts readMaterials(DataInputStream in) throws IOException {
+        int materialCount = in.readInt();
+        MaterialCounts materials = new MaterialCounts(materialCount);
+        for (int j = 0; j < materialCount; j++) {
+            materials.add(MaterialKeys.itemIdByName(in.readUTF()), in.readInt());
+        }
+        return materials;
+    }
+
+    private static void skipMaterials(DataInputStream in) throws IOException {
+        int materialCount = in.readInt();
+        for (int j = 0; j < materialCount; j++) {
+            in.readUTF();
+            in.readInt();
+        }
+    }
+}
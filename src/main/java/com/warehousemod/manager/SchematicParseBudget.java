@@ -0,0 +1,102 @@
+package com.warehousemod.manager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同时解析的原理图共用的内存预算
+ * 解析之前按文件大小和格式估算需要的内存并预留，预算不足时按先来后到等待；
+ * 估算值同时作为读取 NBT 的配额，文件实际内容比估算的大时在分配之前就停止读取
+ */
+final class SchematicParseBudget {
+    // 读取成对象的 NBT 数据相对于解压后大小的倍数：数组为主的格式约为 1，
+    // 原版结构的每个方块都是一个复合标签，对象开销是数据本身的数倍
+    private static final int ARRAY_FORMAT_FACTOR = 2;
+    private static final int STRUCTURE_FACTOR = 6;
+    // 信号量以 KB 为单位，避免超出 int 范围
+    private static final int UNIT = 1024;
+
+    /**
+     * 已预留的内存，关闭时归还
+     */
+    final class Reservation implements AutoCloseable {
+        private final int units;
+        private boolean released;
+
+        private Reservation(int units) {
+            this.units = units;
+        }
+
+        /**
+         * 解析时允许读取成对象的字节数
+         */
+        long bytes() {
+            return (long) units * UNIT;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                permits.release(units);
+            }
+        }
+    }
+
+    private final long limitBytes;
+    private final int limitUnits;
+    private final Semaphore permits;
+
+    SchematicParseBudget(long limitBytes) {
+        this.limitUnits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, limitBytes / UNIT));
+        this.limitBytes = (long) limitUnits * UNIT;
+        // 公平模式，大文件不会一直被后来的小文件插队
+        this.permits = new Semaphore(limitUnits, true);
+    }
+
+    /**
+     * 估算解析需要的内存
+     *
+     * @param uncompressedSize 解压后的 NBT 大小
+     */
+    static long estimate(String fileName, long uncompressedSize) {
+        int factor = fileName.toLowerCase(Locale.ROOT).endsWith(".nbt") ? STRUCTURE_FACTOR : ARRAY_FORMAT_FACTOR;
+        return uncompressedSize > Long.MAX_VALUE / factor ? Long.MAX_VALUE : uncompressedSize * factor;
+    }
+
+    /**
+     * 预留内存，预算不足时等待其他解析完成
+     *
+     * @throws IOException 需要的内存超过整个预算，或者等待时被中断（超时或取消）
+     */
+    Reservation reserve(String fileName, long bytes) throws IOException {
+        if (bytes > limitBytes) {
+            throw new IOException(String.format("原理图 %s 过大: 估计需要 %d MB 内存，解析内存上限为 %d MB",
+                    fileName, bytes >> 20, limitBytes >> 20));
+        }
+        int units = (int) Math.max(1, (bytes + UNIT - 1) / UNIT);
+        try {
+            // 带超时的 tryAcquire 遵守公平顺序，不会插到正在等待的解析前面
+            if (!permits.tryAcquire(units, 0, TimeUnit.MILLISECONDS)) {
+                com.warehousemod.WarehouseMod.LOGGER.info("解析内存不足，{} 等待其他原理图解析完成（需要 {} MB，剩余 {} MB）",
+                        fileName, bytes >> 20, availableBytes() >> 20);
+                permits.acquire(units);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待解析内存时被中断");
+        }
+        return new Reservation(units);
+    }
+
+    long limitBytes() {
+        return limitBytes;
+    }
+
+    long availableBytes() {
+        return (long) permits.availablePermits() * UNIT;
+    }
+}
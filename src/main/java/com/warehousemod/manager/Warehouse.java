@@ -0,0 +1,272 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.config.WarehouseConfig;
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.metrics.WarehouseMetrics;
+import com.warehousemod.screen.WarehouseScreenHandler;
+import com.warehousemod.screen.WarehouseScreenHandlerFactory;
+import com.warehousemod.storage.WarehouseStorage;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+/**
+ * 一个命名仓库：存储内容、物品统计索引和后台保存
+ * 由 WarehouseManager 在第一次使用时加载，空闲一段时间后卸载
+ */
+public class Warehouse {
+    // 每次清空最多扔出的物品组数，避免一次生成过多掉落物
+    private static final int MAX_CLEAR_STACKS = 256;
+    private static final String FULL_SNAPSHOT_KEY = "FullSnapshot";
+
+    private final String name;
+    private final RegistryWrapper.WrapperLookup registries;
+    private final WarehouseStorage storage = new WarehouseStorage();
+    private final WarehouseJournal journal;
+    private final boolean journaled;
+    // 上次保存之后数量发生变化的物品种类（只在服务器线程访问）
+    private final Set<ItemVariant> changedVariants = new LinkedHashSet<>();
+    // 日志写入失败后，下一条记录需要包含所有物品
+    private volatile boolean resyncJournal;
+    private final WarehouseItemIndex itemIndex;
+    private final WarehouseSaver saver;
+    // 正在查看这个仓库的界面，有人查看时不会被卸载
+    private final Set<WarehouseScreenHandler> viewers = new HashSet<>();
+    // 这一刻内容有变化，需要在刻结束时更新查看者的界面
+    private boolean viewsDirty;
+    private long lastAccessMillis = System.currentTimeMillis();
+
+    /**
+     * @param registries     读写物品组件时使用的注册表
+     * @param serverExecutor 服务器主线程，保存时在这里生成快照
+     */
+    Warehouse(String name, Path file, RegistryWrapper.WrapperLookup registries, Executor serverExecutor,
+              ScheduledExecutorService writer, Function<ItemStack, MaterialCounts> stackCounter) {
+        this.name = name;
+        this.registries = registries;
+        WarehouseConfig config = WarehouseConfig.get();
+        this.journal = new WarehouseJournal(file, config.saveJournalCompactBytes);
+        this.journaled = config.saveJournal;
+        WarehouseMetrics.Sample loadSample = WarehouseMetrics.start(WarehouseMetrics.Operation.WAREHOUSE_LOAD, name);
+        boolean loaded = load(loadSample);
+        loadSample.stop(loaded);
+        this.itemIndex = WarehouseMetrics.time(WarehouseMetrics.Operation.WAREHOUSE_INDEX, name,
+                () -> new WarehouseItemIndex(storage, stackCounter));
+        this.saver = new WarehouseSaver(name, writer, config.saveDebounceMillis, serverExecutor,
+                journaled ? this::createChanges : this::createSnapshot,
+                journaled ? this::appendChanges : journal::writeSnapshot);
+        // 仓库内容变化时标记为需要保存
+        storage.addListener((variant, delta) -> {
+            changedVariants.add(variant);
+            saver.markDirty();
+            // 没有人查看时不需要准备界面更新
+            if (!viewers.isEmpty()) {
+                viewsDirty = true;
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public WarehouseStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * 仓库中每种物品的总数（包括潜影盒内的物品），键为物品注册表原始ID
+     * 返回增量维护的表，不会遍历仓库，调用者不能修改
+     */
+    public MaterialCounts getItems() {
+        return itemIndex.getTotals();
+    }
+
+    /**
+     * 物品统计的版本号，仓库内容变化时增加
+     */
+    public int getItemsRevision() {
+        return itemIndex.getRevision();
+    }
+
+    public void open(ServerPlayerEntity player) {
+        player.openHandledScreen(new WarehouseScreenHandlerFactory(this));
+    }
+
+    /**
+     * 把仓库中的物品扔给玩家，每次最多扔出 MAX_CLEAR_STACKS 组
+     *
+     * @return 是否已经全部清空
+     */
+    public boolean dropAll(ServerPlayerEntity player) {
+        int dropped = 0;
+        while (!storage.isEmpty() && dropped < MAX_CLEAR_STACKS) {
+            ItemVariant variant = storage.getVariant(storage.size() - 1);
+            ItemStack stack = variant.toStack();
+            int amount = (int) storage.extract(variant, stack.getMaxCount());
+            stack.setCount(amount);
+            player.dropItem(stack, false, false);
+            dropped++;
+        }
+        return storage.isEmpty();
+    }
+
+    public void addViewer(WarehouseScreenHandler handler) {
+        viewers.add(handler);
+        touch();
+    }
+
+    public void removeViewer(WarehouseScreenHandler handler) {
+        viewers.remove(handler);
+        touch();
+    }
+
+    /**
+     * 每刻结束时调用一次，把这一刻的所有变化合并后推送给查看者
+     * 每个被查看的页面只生成一次，多个玩家查看同一页时共用
+     */
+    void broadcastViewUpdates() {
+        if (!viewsDirty) {
+            return;
+        }
+        viewsDirty = false;
+
+        Int2ObjectOpenHashMap<ItemStack[]> pages = new Int2ObjectOpenHashMap<>();
+        for (WarehouseScreenHandler viewer : viewers) {
+            ItemStack[] stacks = pages.computeIfAbsent(viewer.clampPage(), page -> WarehouseScreenHandler.buildPage(storage, page));
+            viewer.updateView(stacks);
+        }
+    }
+
+    void touch() {
+        lastAccessMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * 没有人查看并且超过指定时间没有被使用
+     */
+    boolean isIdle(long now, long idleMillis) {
+        return viewers.isEmpty() && now - lastAccessMillis >= idleMillis;
+    }
+
+    /**
+     * 立即保存尚未写入的修改，没有修改时不会写文件
+     */
+    public void save() {
+        saver.flush();
+    }
+
+    /**
+     * 保存尚未写入的修改，之后这个实例不再保存任何修改
+     */
+    void close() {
+        saver.close();
+    }
+
+    /**
+     * @param sample 记录读取和转换时写入的字节数
+     * @return 是否成功读取，文件不存在也算成功
+     */
+    private boolean load(WarehouseMetrics.Sample sample) {
+        try {
+            // 快照 + 日志重放
+            WarehouseJournal.Contents contents = journal.load();
+            sample.bytes(contents.bytesRead());
+            contents.variants().forEach((variantNbt, count) -> {
+                ItemVariant variant = ItemVariant.fromNbt(variantNbt, registries);
+                if (variant.isBlank()) {
+                    com.warehousemod.WarehouseMod.LOGGER.warn("无法读取仓库 {} 中的物品: {}", name, variantNbt);
+                    return;
+                }
+                storage.insert(variant, count);
+            });
+
+            if (!contents.legacyStacks().isEmpty()) {
+                for (NbtCompound stackNbt : contents.legacyStacks()) {
+                    ItemStack.fromNbt(registries, stackNbt).ifPresent(stack -> storage.insert(ItemVariant.of(stack), stack.getCount()));
+                }
+                // 旧版本按槽位保存的数据立即转换为新格式
+                sample.bytes(journal.writeSnapshot(createSnapshot()));
+                com.warehousemod.WarehouseMod.LOGGER.info("已将旧版仓库数据转换为新格式: {} 种物品", storage.size());
+            }
+        } catch (IOException e) {
+            com.warehousemod.WarehouseMod.LOGGER.error("加载仓库 {} 失败", name, e);
+            changedVariants.clear();
+            return false;
+        }
+        changedVariants.clear();
+        return true;
+    }
+
+    /**
+     * 在服务器线程上生成完整的仓库快照，交给后台线程写入
+     */
+    NbtCompound createSnapshot() {
+        changedVariants.clear();
+        NbtList list = new NbtList();
+        for (int i = 0; i < storage.size(); i++) {
+            list.add(variantEntry(storage.getVariant(i), storage.getCount(i)));
+        }
+        return variantsNbt(list);
+    }
+
+    /**
+     * 在服务器线程上收集上次保存之后数量发生变化的物品，没有变化时返回 null
+     */
+    private NbtCompound createChanges() {
+        if (resyncJournal) {
+            // 日志中可能缺少记录，改为写入完整的快照
+            resyncJournal = false;
+            NbtCompound snapshot = createSnapshot();
+            snapshot.putBoolean(FULL_SNAPSHOT_KEY, true);
+            return snapshot;
+        }
+        if (changedVariants.isEmpty()) {
+            return null;
+        }
+
+        NbtList list = new NbtList();
+        for (ItemVariant variant : changedVariants) {
+            // 数量为 0 表示已经取完
+            list.add(variantEntry(variant, storage.getCount(variant)));
+        }
+        changedVariants.clear();
+        return variantsNbt(list);
+    }
+
+    private long appendChanges(NbtCompound changes) throws IOException {
+        try {
+            if (changes.getBoolean(FULL_SNAPSHOT_KEY)) {
+                changes.remove(FULL_SNAPSHOT_KEY);
+                return journal.writeSnapshot(changes);
+            }
+            return journal.append(changes);
+        } catch (IOException e) {
+            resyncJournal = true;
+            throw e;
+        }
+    }
+
+    private NbtCompound variantEntry(ItemVariant variant, long count) {
+        return WarehouseJournal.variantEntry(variant.toNbt(registries), count);
+    }
+
+    private static NbtCompound variantsNbt(NbtList list) {
+        NbtCompound nbt = new NbtCompound();
+        nbt.put("Variants", list);
+        return nbt;
+    }
+}
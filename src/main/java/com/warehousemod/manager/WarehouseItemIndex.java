@@ -0,0 +1,77 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.storage.WarehouseStorage;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+import net.minecraft.item.ItemStack;
+
+import java.util.function.Function;
+
+/**
+ * 仓库物品数量的增量索引
+ * 监听存储中每种物品的数量变化，读取总数时不需要遍历仓库
+ */
+public class WarehouseItemIndex {
+    private final WarehouseStorage storage;
+    private final Function<ItemStack, MaterialCounts> stackCounter;
+    private final WarehouseStorage.Listener listener = this::onStorageChanged;
+    // 存储的数量是 long，总数也用 long 累加，监听器里不会溢出
+    private final Int2LongOpenHashMap totals = new Int2LongOpenHashMap(256);
+    // 每次变化加一，用于判断统计结果是否变化
+    private int revision;
+    // getTotals 返回的材料表，对应 viewRevision 时的总数
+    private MaterialCounts view = new MaterialCounts();
+    private int viewRevision;
+
+    /**
+     * @param stackCounter 统计单个物品（包括潜影盒内容）中的物品数量
+     */
+    public WarehouseItemIndex(WarehouseStorage storage, Function<ItemStack, MaterialCounts> stackCounter) {
+        this.storage = storage;
+        this.stackCounter = stackCounter;
+        for (int i = 0; i < storage.size(); i++) {
+            onStorageChanged(storage.getVariant(i), storage.getCount(i));
+        }
+        storage.addListener(listener);
+    }
+
+    /**
+     * 当前仓库中每种物品的总数，调用者不能修改
+     * 仓库变化后第一次读取时重新生成，超过 int 范围的数量按 Integer.MAX_VALUE 计算
+     */
+    public MaterialCounts getTotals() {
+        if (viewRevision != revision) {
+            MaterialCounts counts = new MaterialCounts(totals.size());
+            for (Int2LongMap.Entry entry : totals.int2LongEntrySet()) {
+                counts.add(entry.getIntKey(), (int) Math.min(entry.getLongValue(), Integer.MAX_VALUE));
+            }
+            view = counts;
+            viewRevision = revision;
+        }
+        return view;
+    }
+
+    /**
+     * 停止跟踪仓库变化，之后的统计结果不再更新
+     */
+    public void close() {
+        storage.removeListener(listener);
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    private void onStorageChanged(ItemVariant variant, long delta) {
+        // 在存储修改之后调用，这里不能抛出异常，否则存储和索引不一致，后面的监听器也收不到通知
+        stackCounter.apply(variant.toStack()).forEach((itemId, count) -> {
+            long total = totals.addTo(itemId, count * delta) + count * delta;
+            if (total <= 0) {
+                totals.remove(itemId);
+            }
+        });
+        revision++;
+    }
+}
@@ -0,0 +1,272 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 仓库数据在磁盘上的格式：压缩的快照文件 + 追加写入的日志
+ * 快照和日志记录都是 {Variants: [{Variant, Count}]} 结构，记录的是每种物品变化后的数量，0 表示已取完，
+ * 加载时先读快照再按顺序重放日志；日志超过阈值后合并成新的快照
+ * 这里只处理 NBT，不接触仓库本身，因此可以在后台线程中执行
+ */
+public class WarehouseJournal {
+
+    /**
+     * 加载结果
+     *
+     * @param variants     物品种类NBT -> 数量，按放入的先后顺序
+     * @param legacyStacks 旧版本按槽位保存的物品堆，需要转换后重新保存
+     * @param bytesRead    读取的快照和日志文件大小之和
+     */
+    public record Contents(Map<NbtCompound, Long> variants, List<NbtCompound> legacyStacks, long bytesRead) {
+    }
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final long compactThreshold;
+    // 第一次写入时才创建所在的目录，只读取的仓库不会在磁盘上留下空目录
+    private boolean directoryCreated;
+
+    public WarehouseJournal(Path snapshotFile, long compactThreshold) {
+        this.snapshotFile = snapshotFile;
+        this.logFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + LOG_SUFFIX);
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * 创建一条物品种类记录
+     */
+    public static NbtCompound variantEntry(NbtCompound variant, long count) {
+        NbtCompound entry = new NbtCompound();
+        entry.put("Variant", variant);
+        entry.putLong("Count", count);
+        return entry;
+    }
+
+    /**
+     * 读取快照并重放日志，日志末尾写了一半的记录会被截掉
+     */
+    public Contents load() throws IOException {
+        Map<NbtCompound, Long> variants = new LinkedHashMap<>();
+        // 旧版本的数据按槽位保存
+        Map<Integer, NbtCompound> slots = new TreeMap<>();
+        long bytesRead = 0;
+
+        if (Files.exists(snapshotFile)) {
+            bytesRead += Files.size(snapshotFile);
+            NbtCompound snapshot = readSnapshot();
+            if (snapshot != null) {
+                if (snapshot.contains("Items", NbtElement.LIST_TYPE)) {
+                    // 最早的格式，物品没有槽位信息
+                    NbtList items = snapshot.getList("Items", NbtElement.COMPOUND_TYPE);
+                    for (int i = 0; i < items.size(); i++) {
+                        slots.put(i, items.getCompound(i));
+                    }
+                }
+                apply(snapshot, variants, slots);
+            }
+        }
+
+        if (Files.exists(logFile)) {
+            bytesRead += Files.size(logFile);
+            replayLog(variants, slots);
+        }
+        WarehouseMetrics.bytesRead(bytesRead);
+        return new Contents(variants, new ArrayList<>(slots.values()), bytesRead);
+    }
+
+    /**
+     * 把一批物品数量变化追加到日志，日志过大时合并成快照
+     *
+     * @return 写入的字节数，包括合并时写入的快照
+     */
+    public long append(NbtCompound changes) throws IOException {
+        createDirectory();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0);
+        try (DataOutputStream deflated = new DataOutputStream(new DeflaterOutputStream(buffer))) {
+            NbtIo.write(changes, deflated);
+        }
+        ByteBuffer record = ByteBuffer.wrap(buffer.toByteArray());
+        record.putInt(0, record.remaining() - Integer.BYTES);
+
+        long logSize;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            logSize = channel.size();
+        }
+        long bytesWritten = record.limit();
+        WarehouseMetrics.bytesWritten(bytesWritten);
+
+        if (logSize > compactThreshold) {
+            bytesWritten += compact();
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * 用完整的仓库数据替换快照，并删除已经包含在其中的日志
+     *
+     * @return 写入的字节数
+     */
+    public long writeSnapshot(NbtCompound snapshot) throws IOException {
+        createDirectory();
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        NbtIo.writeCompressed(snapshot, tempFile);
+        long bytesWritten = Files.size(tempFile);
+        WarehouseMetrics.bytesWritten(bytesWritten);
+        try {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // 如果在这里崩溃，下次加载时重放的日志与快照内容一致，不会出错
+        Files.deleteIfExists(logFile);
+        return bytesWritten;
+    }
+
+    private void createDirectory() throws IOException {
+        if (!directoryCreated) {
+            Files.createDirectories(snapshotFile.getParent());
+            directoryCreated = true;
+        }
+    }
+
+    /**
+     * 把快照和日志合并成新的快照
+     *
+     * @return 写入的字节数，跳过合并时为 0
+     */
+    public long compact() throws IOException {
+        Contents contents = load();
+        if (!contents.legacyStacks().isEmpty()) {
+            // 旧格式的数据由仓库加载时转换，这里不能丢掉
+            com.warehousemod.WarehouseMod.LOGGER.warn("仓库数据中仍有旧格式的物品，跳过日志合并");
+            return 0;
+        }
+        NbtList list = new NbtList();
+        contents.variants().forEach((variant, count) -> list.add(variantEntry(variant, count)));
+        NbtCompound snapshot = new NbtCompound();
+        snapshot.put("Variants", list);
+        long bytesWritten = writeSnapshot(snapshot);
+        com.warehousemod.WarehouseMod.LOGGER.debug("仓库日志已合并: {} 种物品", list.size());
+        return bytesWritten;
+    }
+
+    private NbtCompound readSnapshot() throws IOException {
+        // 根据文件头判断是否经过 gzip 压缩，兼容旧版本未压缩的文件
+        boolean compressed;
+        try (InputStream in = Files.newInputStream(snapshotFile)) {
+            compressed = in.read() == 0x1f && in.read() == 0x8b;
+        }
+        return compressed
+                ? NbtIo.readCompressed(snapshotFile, NbtSizeTracker.ofUnlimitedBytes())
+                : NbtIo.read(snapshotFile);
+    }
+
+    private void replayLog(Map<NbtCompound, Long> variants, Map<Integer, NbtCompound> slots) throws IOException {
+        long validLength = 0;
+        int records = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    com.warehousemod.WarehouseMod.LOGGER.warn("仓库日志记录长度无效: {}", length);
+                    break;
+                }
+
+                byte[] data = new byte[length];
+                try {
+                    in.readFully(data);
+                } catch (EOFException e) {
+                    com.warehousemod.WarehouseMod.LOGGER.warn("仓库日志末尾的记录不完整，已忽略");
+                    break;
+                }
+
+                NbtCompound changes;
+                try (DataInputStream record = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+                    changes = NbtIo.readCompound(record);
+                } catch (IOException e) {
+                    com.warehousemod.WarehouseMod.LOGGER.warn("仓库日志记录损坏，已忽略之后的内容: {}", e.getMessage());
+                    break;
+                }
+
+                apply(changes, variants, slots);
+                validLength += Integer.BYTES + length;
+                records++;
+            }
+        }
+
+        // 截掉无法读取的部分，之后追加的记录才能被正确读取
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+        }
+        com.warehousemod.WarehouseMod.LOGGER.debug("已重放仓库日志: {} 条记录", records);
+    }
+
+    private static void apply(NbtCompound changes, Map<NbtCompound, Long> variants, Map<Integer, NbtCompound> slots) {
+        NbtList list = changes.getList("Variants", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < list.size(); i++) {
+            NbtCompound entry = list.getCompound(i);
+            long count = entry.getLong("Count");
+            if (count > 0) {
+                variants.put(entry.getCompound("Variant"), count);
+            } else {
+                variants.remove(entry.getCompound("Variant"));
+            }
+        }
+
+        // 上一个版本按槽位记录的变化，没有 Item 表示槽位被清空
+        NbtList slotList = changes.getList("Slots", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < slotList.size(); i++) {
+            NbtCompound entry = slotList.getCompound(i);
+            int slot = entry.getInt("Slot");
+            if (entry.contains("Item", NbtElement.COMPOUND_TYPE)) {
+                slots.put(slot, entry.getCompound("Item"));
+            } else {
+                slots.remove(slot);
+            }
+        }
+    }
+}
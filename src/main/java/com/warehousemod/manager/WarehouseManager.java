@@ -1,235 +1,178 @@
 package com.warehousemod.manager;
 
-import net.minecraft.inventory.SimpleInventory;
-import net.minecraft.item.ItemStack;
-import net.minecraft.nbt.NbtCompound;
-import net.minecraft.nbt.NbtIo;
-import net.minecraft.nbt.NbtList;
-import net.minecraft.registry.RegistryWrapper;
-import net.minecraft.screen.NamedScreenHandlerFactory;
+import com.warehousemod.config.WarehouseConfig;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.text.Text;
 import net.minecraft.util.WorldSavePath;
-import com.warehousemod.screen.WarehouseScreenHandlerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * 管理所有命名仓库
+ * 每个仓库保存在 世界存档/warehouses/<分片>/<名称>.dat，第一次打开或查询时才加载，
+ * 空闲一段时间后保存并从内存中卸载
+ */
 public class WarehouseManager {
-    private static final String WAREHOUSE_FILE = "public_warehouse.dat";
-    private SimpleInventory warehouseInventory;
-    private Path warehouseFile;
-    private MinecraftServer server;
+    public static final String DEFAULT_WAREHOUSE = "public";
+    private static final String WAREHOUSE_DIR = "warehouses";
+    private static final String LEGACY_WAREHOUSE_FILE = "public_warehouse.dat";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-z0-9_-]{1,32}");
+    // 每隔多少刻检查一次空闲的仓库
+    private static final int IDLE_CHECK_INTERVAL = 20 * 30;
+    private final MinecraftServer server;
+    private final Path warehouseDir;
+    private final Map<String, Warehouse> loaded = new HashMap<>();
+    // 所有仓库共用一个写入线程
+    private final ScheduledExecutorService writer;
+    private int ticks;
+    // 所有仓库共用潜影盒内容统计缓存
+    private final ItemStackCounter stackCounter = new ItemStackCounter();
 
     public WarehouseManager(MinecraftServer server) {
         this.server = server;
-        this.warehouseInventory = new SimpleInventory(54);
-        loadWarehouse();
+        this.warehouseDir = server.getSavePath(WorldSavePath.ROOT).resolve(WAREHOUSE_DIR);
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warehousemod-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        migrateLegacyWarehouse();
     }
 
-    public void openWarehouse(ServerPlayerEntity player) {
-        // 创建 NamedScreenHandlerFactory
-        NamedScreenHandlerFactory factory = new NamedScreenHandlerFactory() {
-            @Override
-            public net.minecraft.screen.ScreenHandler createMenu(int syncId, net.minecraft.entity.player.PlayerInventory inv, net.minecraft.entity.player.PlayerEntity player) {
-                return new com.warehousemod.screen.WarehouseScreenHandler(syncId, inv, WarehouseManager.this.warehouseInventory);
-            }
-
-            @Override
-            public Text getDisplayName() {
-                return Text.literal("公共仓库");
-            }
-        };
-        player.openHandledScreen(factory);
+    /**
+     * 仓库名称只能包含小写字母、数字、下划线和减号
+     */
+    public static boolean isValidName(String name) {
+        return NAME_PATTERN.matcher(name).matches();
     }
 
-    public void clearWarehouse(ServerPlayerEntity player) {
-        for (int i = 0; i < warehouseInventory.size(); i++) {
-            ItemStack stack = warehouseInventory.getStack(i);
-            if (!stack.isEmpty()) {
-                player.dropItem(stack, false, false);
-                warehouseInventory.setStack(i, ItemStack.EMPTY);
-            }
-        }
-        saveWarehouse();
+    public static String normalizeName(String name) {
+        return name.toLowerCase(Locale.ROOT);
     }
 
-    public Map<String, Integer> getWarehouseItems() {
-        Map<String, Integer> items = new HashMap<>();
-        int nonEmptySlots = 0;
-
-        for (int i = 0; i < warehouseInventory.size(); i++) {
-            ItemStack stack = warehouseInventory.getStack(i);
-            if (!stack.isEmpty()) {
-                nonEmptySlots++;
-                // 检查是否为潜影盒
-                if (isShulkerBox(stack)) {
-                    // 递归读取潜影盒内的物品
-                    Map<String, Integer> shulkerItems = getShulkerBoxItems(stack);
-                    shulkerItems.forEach((item, count) -> {
-                        items.put(item, items.getOrDefault(item, 0) + count);
-                    });
-                } else {
-                    // 普通物品
-                    String itemId = stack.getItem().getTranslationKey();
-                    items.put(itemId, items.getOrDefault(itemId, 0) + stack.getCount());
-                }
-            }
+    /**
+     * 仓库是否已经存在（已加载或者磁盘上有数据），默认仓库总是存在
+     */
+    public boolean exists(String name) {
+        if (DEFAULT_WAREHOUSE.equals(name) || loaded.containsKey(name)) {
+            return true;
         }
-
-        com.warehousemod.WarehouseMod.LOGGER.info("仓库统计: {} 个非空槽位, {} 种不同物品", nonEmptySlots, items.size());
-        return items;
+        Path file = warehouseFile(name);
+        return Files.exists(file) || Files.exists(file.resolveSibling(file.getFileName() + ".log"));
     }
 
     /**
-     * 检查物品是否为潜影盒
+     * 获取仓库，没有加载时从磁盘加载，不存在时创建一个空仓库
      */
-    private boolean isShulkerBox(ItemStack stack) {
-        String itemId = stack.getItem().getTranslationKey();
-        return itemId.contains("shulker_box");
+    public Warehouse getWarehouse(String name) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("无效的仓库名称: " + name);
+        }
+        Warehouse warehouse = loaded.get(name);
+        if (warehouse == null) {
+            long start = System.nanoTime();
+            warehouse = new Warehouse(name, warehouseFile(name), server.getRegistryManager(), server, writer, stackCounter::count);
+            loaded.put(name, warehouse);
+            com.warehousemod.WarehouseMod.LOGGER.info("已加载仓库 {}（{} 种物品，耗时 {} ms）",
+                    name, warehouse.getStorage().size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        warehouse.touch();
+        return warehouse;
     }
 
     /**
-     * 读取潜影盒内的所有物品
+     * 已加载的仓库，没有加载时返回 null，不会触发加载
      */
-    private Map<String, Integer> getShulkerBoxItems(ItemStack shulkerBox) {
-        Map<String, Integer> items = new HashMap<>();
-
-        try {
-            // 方法1: 使用组件系统获取潜影盒内容
-            var containerComponent = shulkerBox.get(net.minecraft.component.DataComponentTypes.CONTAINER);
-            if (containerComponent != null) {
-                // 遍历容器内的所有物品
-                for (ItemStack nestedStack : containerComponent.iterateNonEmpty()) {
-                    if (!nestedStack.isEmpty()) {
-                        // 递归检查嵌套的潜影盒
-                        if (isShulkerBox(nestedStack)) {
-                            Map<String, Integer> nestedItems = getShulkerBoxItems(nestedStack);
-                            nestedItems.forEach((nestedItem, nestedCount) -> {
-                                items.put(nestedItem, items.getOrDefault(nestedItem, 0) + nestedCount);
-                            });
-                        } else {
-                            String itemId = nestedStack.getItem().getTranslationKey();
-                            items.put(itemId, items.getOrDefault(itemId, 0) + nestedStack.getCount());
-                        }
-                    }
-                }
-                com.warehousemod.WarehouseMod.LOGGER.info("通过组件系统读取潜影盒内容: {} 种物品", items.size());
-                return items;
-            } else {
-                // 如果容器组件为空，使用简化方法
-                com.warehousemod.WarehouseMod.LOGGER.warn("潜影盒容器组件为空");
-                trySimpleShulkerBoxReading(shulkerBox, items);
-            }
-        } catch (Exception e) {
-            com.warehousemod.WarehouseMod.LOGGER.warn("读取潜影盒物品失败: {}", e.getMessage());
-            // 如果组件方法失败，使用简化方法
-            trySimpleShulkerBoxReading(shulkerBox, items);
-        }
+    public Warehouse getLoadedWarehouse(String name) {
+        return loaded.get(name);
+    }
 
-        return items;
+    public int getLoadedCount() {
+        return loaded.size();
     }
 
     /**
-     * 简化方法：作为最后的备选方案
+     * 每刻结束时调用一次，推送这一刻的界面变化并定期卸载空闲的仓库
      */
-    private void trySimpleShulkerBoxReading(ItemStack shulkerBox, Map<String, Integer> items) {
-        try {
-            // 只是简单地添加潜影盒本身作为物品
-            String shulkerBoxId = shulkerBox.getItem().getTranslationKey();
-            items.put(shulkerBoxId, items.getOrDefault(shulkerBoxId, 0) + 1);
+    public void tick() {
+        for (Warehouse warehouse : loaded.values()) {
+            warehouse.broadcastViewUpdates();
+        }
+        if (++ticks % IDLE_CHECK_INTERVAL != 0) {
+            return;
+        }
 
-            com.warehousemod.WarehouseMod.LOGGER.info("使用简化方法，只统计潜影盒本身");
-        } catch (Exception e3) {
-            com.warehousemod.WarehouseMod.LOGGER.warn("简化方法也失败: {}", e3.getMessage());
+        long now = System.currentTimeMillis();
+        long idleMillis = WarehouseConfig.get().warehouseIdleSeconds * 1000L;
+        Iterator<Warehouse> iterator = loaded.values().iterator();
+        while (iterator.hasNext()) {
+            Warehouse warehouse = iterator.next();
+            if (warehouse.isIdle(now, idleMillis)) {
+                warehouse.close();
+                iterator.remove();
+                com.warehousemod.WarehouseMod.LOGGER.info("仓库 {} 空闲，已从内存中卸载", warehouse.getName());
+            }
         }
     }
 
     /**
-     * 将物品ID转换为翻译键格式
-     * 例如: "minecraft:stone" -> "block.minecraft.stone"
-     *        "minecraft:stick" -> "item.minecraft.stick"
+     * 立即保存所有已加载仓库尚未写入的修改
      */
-    private String convertItemIdToTranslationKey(String itemId) {
-        if (itemId.startsWith("minecraft:")) {
-            String itemName = itemId.substring(10); // 移除 "minecraft:"
-
-            // 判断是方块还是物品
-            if (isBlock(itemName)) {
-                return "block.minecraft." + itemName;
-            } else {
-                return "item.minecraft." + itemName;
-            }
+    public void saveAll() {
+        for (Warehouse warehouse : loaded.values()) {
+            warehouse.save();
         }
-
-        // 对于其他命名空间的物品，保持原样
-        return itemId.replace(":", ".");
     }
 
     /**
-     * 判断物品ID是否为方块
-     * 这是一个简化的判断，实际可能需要更复杂的逻辑
+     * 保存所有仓库并停止写入线程
      */
-    private boolean isBlock(String itemName) {
-        // 常见的方块类型
-        String[] blockIndicators = {
-                "stone", "dirt", "grass", "wood", "log", "planks", "bricks", "glass",
-                "wool", "concrete", "terracotta", "ore", "sand", "gravel", "clay",
-                "bedrock", "obsidian", "prismarine", "purpur", "end_stone", "netherrack",
-                "andesite", "diorite", "granite", "cobblestone", "mossy_cobblestone"
-        };
-
-        for (String indicator : blockIndicators) {
-            if (itemName.contains(indicator)) {
-                return true;
-            }
+    public void close() {
+        for (Warehouse warehouse : loaded.values()) {
+            warehouse.close();
         }
-
-        // 默认情况下，如果名称包含这些词缀，则认为是方块
-        return itemName.endsWith("_block") ||
-                itemName.endsWith("_slab") ||
-                itemName.endsWith("_stairs") ||
-                itemName.endsWith("_wall") ||
-                itemName.endsWith("_fence") ||
-                itemName.endsWith("_leaves") ||
-                itemName.endsWith("_sapling");
+        loaded.clear();
+        writer.shutdown();
     }
 
-    public SimpleInventory getInventory() {
-        return warehouseInventory;
+    /**
+     * 按名称的哈希分片，避免一个目录中的文件过多
+     * 只计算路径，目录在第一次保存时由 {@link WarehouseJournal} 创建
+     */
+    private Path warehouseFile(String name) {
+        String shard = String.format("%02x", name.hashCode() & 0xff);
+        return warehouseDir.resolve(shard).resolve(name + ".dat");
     }
 
-    private void loadWarehouse() {
-        try {
-            warehouseFile = server.getSavePath(WorldSavePath.ROOT).resolve(WAREHOUSE_FILE);
-
-            if (Files.exists(warehouseFile)) {
-                NbtCompound nbt = NbtIo.read(warehouseFile);
-                if (nbt != null && nbt.contains("Items")) {
-                    NbtList list = nbt.getList("Items", 10);
-                    // 使用新的 API
-                    RegistryWrapper.WrapperLookup wrapperLookup = server.getRegistryManager();
-                    warehouseInventory.readNbtList(list, wrapperLookup);
-                }
-            }
-        } catch (IOException e) {
-            com.warehousemod.WarehouseMod.LOGGER.error("加载仓库数据失败", e);
+    /**
+     * 把旧版本的 public_warehouse.dat 移动为默认仓库
+     */
+    private void migrateLegacyWarehouse() {
+        Path legacyFile = server.getSavePath(WorldSavePath.ROOT).resolve(LEGACY_WAREHOUSE_FILE);
+        Path target = warehouseFile(DEFAULT_WAREHOUSE);
+        if (!Files.exists(legacyFile) || Files.exists(target)) {
+            return;
         }
-    }
 
-    public void saveWarehouse() {
         try {
-            NbtCompound nbt = new NbtCompound();
-            // 使用新的 API
-            RegistryWrapper.WrapperLookup wrapperLookup = server.getRegistryManager();
-            nbt.put("Items", warehouseInventory.toNbtList(wrapperLookup));
-            NbtIo.write(nbt, warehouseFile);
+            Files.createDirectories(target.getParent());
+            Path legacyLog = legacyFile.resolveSibling(LEGACY_WAREHOUSE_FILE + ".log");
+            if (Files.exists(legacyLog)) {
+                Files.move(legacyLog, target.resolveSibling(target.getFileName() + ".log"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(legacyFile, target);
+            com.warehousemod.WarehouseMod.LOGGER.info("已将 {} 迁移为默认仓库 {}", LEGACY_WAREHOUSE_FILE, DEFAULT_WAREHOUSE);
         } catch (IOException e) {
-            com.warehousemod.WarehouseMod.LOGGER.error("保存仓库数据失败", e);
+            com.warehousemod.WarehouseMod.LOGGER.error("迁移旧版仓库数据失败", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package com.warehousemod.manager;
+
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.nbt.NbtCompound;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 仓库数据的后台保存
+ * 仓库变化时只标记为脏，等待一段时间没有新的变化后在服务器线程上生成快照，
+ * 再由后台线程写入磁盘，所有写入都在同一个写入线程上按顺序执行
+ */
+public class WarehouseSaver implements AutoCloseable {
+    /**
+     * 在后台线程上把快照写入磁盘，返回写入的字节数
+     */
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        long write(NbtCompound snapshot) throws IOException;
+    }
+
+    private final String name;
+    private final long debounceMillis;
+    private final Executor serverExecutor;
+    private final Supplier<NbtCompound> snapshot;
+    private final SnapshotWriter snapshotWriter;
+    private final ScheduledExecutorService writer;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /**
+     * @param name           仓库名称，用于统计
+     * @param writer         单线程的写入线程，可以由多个仓库共用
+     * @param serverExecutor 服务器主线程，快照必须在主线程上生成
+     * @param snapshot       生成要保存的数据，返回的对象之后不能再被修改；返回 null 表示没有需要写入的内容
+     */
+    public WarehouseSaver(String name, ScheduledExecutorService writer, long debounceMillis, Executor serverExecutor,
+                          Supplier<NbtCompound> snapshot, SnapshotWriter snapshotWriter) {
+        this.name = name;
+        this.writer = writer;
+        this.debounceMillis = debounceMillis;
+        this.serverExecutor = serverExecutor;
+        this.snapshot = snapshot;
+        this.snapshotWriter = snapshotWriter;
+    }
+
+    /**
+     * 标记数据已修改，在防抖时间之后保存
+     */
+    public void markDirty() {
+        if (closed) {
+            return;
+        }
+        dirty.set(true);
+        // 防抖时间内的多次修改只保存一次
+        if (scheduled.compareAndSet(false, true)) {
+            writer.schedule(this::requestSnapshot, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * 在当前线程（必须是服务器线程）生成快照，并等待所有保存完成
+     */
+    public void flush() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        NbtCompound nbt = dirty.getAndSet(false) ? createSnapshot() : null;
+        try {
+            // 写入线程是单线程的，等待这个任务完成也就等待了之前的写入
+            writer.submit(() -> {
+                if (nbt != null) {
+                    write(nbt);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            com.warehousemod.WarehouseMod.LOGGER.error("保存仓库数据失败", e.getCause());
+        }
+    }
+
+    /**
+     * 保存尚未写入的修改，之后的修改不再保存
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+    }
+
+    private void requestSnapshot() {
+        if (closed) {
+            scheduled.set(false);
+            return;
+        }
+        serverExecutor.execute(() -> {
+            scheduled.set(false);
+            if (closed || !dirty.getAndSet(false)) {
+                return;
+            }
+            NbtCompound nbt = createSnapshot();
+            if (nbt != null) {
+                writer.execute(() -> write(nbt));
+            }
+        });
+    }
+
+    private NbtCompound createSnapshot() {
+        // 快照在服务器线程上生成，这部分耗时会直接影响 TPS
+        return WarehouseMetrics.time(WarehouseMetrics.Operation.WAREHOUSE_SNAPSHOT, name, snapshot);
+    }
+
+    private void write(NbtCompound nbt) {
+        WarehouseMetrics.Sample sample = WarehouseMetrics.start(WarehouseMetrics.Operation.WAREHOUSE_WRITE, name);
+        try {
+            sample.bytes(snapshotWriter.write(nbt));
+            sample.stop();
+        } catch (IOException e) {
+            sample.stop(false);
+            com.warehousemod.WarehouseMod.LOGGER.error("保存仓库数据失败", e);
+            // 下次修改时重试
+            dirty.set(true);
+        }
+    }
+}
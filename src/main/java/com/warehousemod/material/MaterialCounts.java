@@ -0,0 +1,249 @@
+package com.warehousemod.material;
+
+import java.util.Arrays;
+
+/**
+ * 以物品注册表原始ID为键的材料数量表
+ * 开放寻址的 int -> int 哈希表，不装箱，计数降到0时自动移除
+ * 共享的缓存结果可以用 {@link #freeze()} 设为只读
+ */
+public class MaterialCounts {
+    private static final int EMPTY = -1;
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int itemId, int count);
+    }
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private boolean frozen;
+
+    public MaterialCounts() {
+        this(8);
+    }
+
+    public MaterialCounts(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public static MaterialCounts of(int itemId, int count) {
+        MaterialCounts counts = new MaterialCounts(1);
+        counts.add(itemId, count);
+        return counts;
+    }
+
+    public int get(int itemId) {
+        int mask = keys.length - 1;
+        for (int i = mix(itemId) & mask; ; i = (i + 1) & mask) {
+            int key = keys[i];
+            if (key == itemId) {
+                return values[i];
+            }
+            if (key == EMPTY) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 增加（或在 delta 为负时减少）某种物品的数量
+     *
+     * @throws ArithmeticException 数量超出 int 范围
+     */
+    public void add(int itemId, int delta) {
+        checkMutable();
+        if (itemId < 0 || delta == 0) {
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int i = mix(itemId) & mask;
+        while (true) {
+            int key = keys[i];
+            if (key == itemId) {
+                int value = Math.addExact(values[i], delta);
+                if (value > 0) {
+                    values[i] = value;
+                } else {
+                    removeAt(i);
+                }
+                return;
+            }
+            if (key == EMPTY) {
+                if (delta > 0) {
+                    keys[i] = itemId;
+                    values[i] = delta;
+                    if (++size * 2 > keys.length) {
+                        resize(keys.length * 2);
+                    }
+                }
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * 把另一个表的数量乘以 multiplier 后累加进来（multiplier 可以为负）
+     *
+     * @throws ArithmeticException 数量超出 int 范围，此时这个表不会被修改
+     */
+    public void addAll(MaterialCounts other, int multiplier) {
+        checkMutable();
+        int[] otherKeys = other.keys;
+        int[] otherValues = other.values;
+        // 先检查所有结果都不会溢出，避免只累加了一部分
+        for (int i = 0; i < otherKeys.length; i++) {
+            if (otherKeys[i] != EMPTY) {
+                Math.addExact(get(otherKeys[i]), Math.multiplyExact(otherValues[i], multiplier));
+            }
+        }
+        for (int i = 0; i < otherKeys.length; i++) {
+            if (otherKeys[i] != EMPTY) {
+                add(otherKeys[i], Math.multiplyExact(otherValues[i], multiplier));
+            }
+        }
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * 所有物品ID，顺序不固定
+     */
+    public int[] itemIds() {
+        int[] ids = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                ids[n++] = key;
+            }
+        }
+        return ids;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 设为只读，之后的修改会抛出 UnsupportedOperationException，返回这个表本身
+     */
+    public MaterialCounts freeze() {
+        frozen = true;
+        return this;
+    }
+
+    /**
+     * 复制出的表总是可以修改
+     */
+    public MaterialCounts copy() {
+        MaterialCounts copy = new MaterialCounts(0);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    public void clear() {
+        checkMutable();
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MaterialCounts other) || other.size != size) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && other.get(keys[i]) != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                hash += mix(keys[i]) ^ values[i];
+            }
+        }
+        return hash;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("材料表是只读的");
+        }
+    }
+
+    private void removeAt(int index) {
+        // 向后移动删除，保持线性探测链完整
+        int mask = keys.length - 1;
+        int hole = index;
+        int i = index;
+        while (true) {
+            i = (i + 1) & mask;
+            int key = keys[i];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = mix(key) & mask;
+            // 如果 home 不在 (hole, i] 范围内，则可以移动到空洞
+            if (hole <= i ? (home <= hole || home > i) : (home <= hole && home > i)) {
+                keys[hole] = key;
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = mix(key) & mask;
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,83 @@
+package com.warehousemod.material;
+
+import net.minecraft.block.Block;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.registry.Registries;
+import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+
+/**
+ * 物品注册表原始ID与方块/物品名称之间的转换
+ * 只有在显示报告时才需要把ID转换回名称
+ */
+public final class MaterialKeys {
+
+    private MaterialKeys() {
+    }
+
+    /**
+     * 物品的原始ID，空气返回 -1
+     */
+    public static int itemId(Item item) {
+        if (item == null || item == Items.AIR) {
+            return -1;
+        }
+        return Registries.ITEM.getRawId(item);
+    }
+
+    public static int itemId(ItemStack stack) {
+        return stack.isEmpty() ? -1 : itemId(stack.getItem());
+    }
+
+    /**
+     * 方块状态字符串（如 "minecraft:oak_stairs[facing=east]"）对应物品的原始ID
+     * 没有对应物品的方块（空气、水等）返回 -1
+     */
+    public static int blockItemId(String blockState) {
+        int propertiesStart = blockState.indexOf('[');
+        String blockName = propertiesStart >= 0 ? blockState.substring(0, propertiesStart) : blockState;
+
+        Identifier id = Identifier.tryParse(blockName);
+        if (id == null) {
+            return -1;
+        }
+        if (Registries.BLOCK.containsId(id)) {
+            Block block = Registries.BLOCK.get(id);
+            return itemId(block.asItem());
+        }
+        // 未注册的方块按同名物品处理
+        return itemIdByName(blockName);
+    }
+
+    /**
+     * 物品ID字符串（如 "minecraft:stick"）对应的原始ID，未注册时返回 -1
+     */
+    public static int itemIdByName(String itemName) {
+        Identifier id = Identifier.tryParse(itemName);
+        if (id == null || !Registries.ITEM.containsId(id)) {
+            return -1;
+        }
+        return itemId(Registries.ITEM.get(id));
+    }
+
+    public static Item item(int itemId) {
+        Item item = Registries.ITEM.get(itemId);
+        return item != null ? item : Items.AIR;
+    }
+
+    /**
+     * 物品ID字符串，用于持久化（原始ID在不同模组组合下可能变化）
+     */
+    public static String itemName(int itemId) {
+        return Registries.ITEM.getId(item(itemId)).toString();
+    }
+
+    /**
+     * 物品的可翻译名称
+     */
+    public static Text displayName(int itemId) {
+        return item(itemId).getName();
+    }
+}
@@ -0,0 +1,173 @@
+package com.warehousemod.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 运行时统计：每种操作的耗时直方图、缓存命中率和读写字节数
+ * 每次操作同时发出一个 JFR 事件，可以和服务器卡顿对应起来；所有方法都可以在任意线程调用
+ */
+public final class WarehouseMetrics {
+
+    /**
+     * 被统计的操作
+     */
+    public enum Operation {
+        SCHEMATIC_MATERIALS("原理图材料统计"),
+        SCHEMATIC_PRELOAD("原理图后台预解析"),
+        PARSE_LITEMATICA_API("Litematica API 解析"),
+        PARSE_LITEMATICA("Litematica 解析"),
+        PARSE_SPONGE("Sponge 原理图解析"),
+        PARSE_LEGACY("旧版原理图解析"),
+        PARSE_STRUCTURE("原版结构解析"),
+        PARSE_OTHER("其他格式解析"),
+        WAREHOUSE_INDEX("仓库物品统计"),
+        WAREHOUSE_LOAD("仓库加载"),
+        WAREHOUSE_SNAPSHOT("仓库快照（主线程）"),
+        WAREHOUSE_WRITE("仓库写入（后台）"),
+        CALCULATE_COMMAND("/c 命令");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 缓存命中统计
+     */
+    public enum Cache {
+        SCHEMATIC_MATERIALS("原理图材料缓存"),
+        SHULKER_CONTENTS("潜影盒内容缓存");
+
+        private final String label;
+
+        Cache(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 一次进行中的操作，结束时调用 stop
+     */
+    public static final class Sample {
+        private final Operation operation;
+        private final String target;
+        private final long start = System.nanoTime();
+        private final OperationEvent event = new OperationEvent();
+        private long bytes;
+
+        private Sample(Operation operation, String target) {
+            this.operation = operation;
+            this.target = target;
+            event.begin();
+        }
+
+        /**
+         * 记录这次操作读取或写入的字节数
+         */
+        public Sample bytes(long bytes) {
+            this.bytes += bytes;
+            return this;
+        }
+
+        public void stop() {
+            stop(true);
+        }
+
+        public void stop(boolean success) {
+            HISTOGRAMS.get(operation).record(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation.name();
+                event.target = target;
+                event.bytes = bytes;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    private static final Map<Operation, LatencyHistogram> HISTOGRAMS = new EnumMap<>(Operation.class);
+    private static final Map<Cache, LongAdder[]> CACHES = new EnumMap<>(Cache.class);
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+    static {
+        for (Operation operation : Operation.values()) {
+            HISTOGRAMS.put(operation, new LatencyHistogram());
+        }
+        for (Cache cache : Cache.values()) {
+            CACHES.put(cache, new LongAdder[]{new LongAdder(), new LongAdder()});
+        }
+    }
+
+    private WarehouseMetrics() {
+    }
+
+    public static Sample start(Operation operation, String target) {
+        return new Sample(operation, target);
+    }
+
+    /**
+     * 统计一次同步操作的耗时，抛出异常时记录为失败
+     */
+    public static <T> T time(Operation operation, String target, Supplier<T> action) {
+        Sample sample = start(operation, target);
+        boolean success = false;
+        try {
+            T result = action.get();
+            success = true;
+            return result;
+        } finally {
+            sample.stop(success);
+        }
+    }
+
+    public static LatencyHistogram histogram(Operation operation) {
+        return HISTOGRAMS.get(operation);
+    }
+
+    public static void cacheHit(Cache cache) {
+        CACHES.get(cache)[0].increment();
+    }
+
+    public static void cacheMiss(Cache cache) {
+        CACHES.get(cache)[1].increment();
+    }
+
+    public static long cacheHits(Cache cache) {
+        return CACHES.get(cache)[0].sum();
+    }
+
+    public static long cacheMisses(Cache cache) {
+        return CACHES.get(cache)[1].sum();
+    }
+
+    public static void bytesRead(long bytes) {
+        BYTES_READ.add(bytes);
+    }
+
+    public static void bytesWritten(long bytes) {
+        BYTES_WRITTEN.add(bytes);
+    }
+
+    public static long getBytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    public static long getBytesWritten() {
+        return BYTES_WRITTEN.sum();
+    }
+}
@@ -15,7 +15,15 @@ public class MinecraftServerMixin {
     @Inject(method = "loadWorld", at = @At("HEAD"))
     private void onServerStart(CallbackInfo ci) {
         MinecraftServer server = (MinecraftServer) (Object) this;
+        if (WarehouseMod.warehouseManager != null) {
+            // 停止 SERVER_STARTING 时创建的实例的保存线程
+            WarehouseMod.warehouseManager.close();
+        }
         WarehouseMod.warehouseManager = new WarehouseManager(server);
+        if (WarehouseMod.schematicManager != null) {
+            // 关闭 SERVER_STARTING 时创建的实例，避免重复的后台线程
+            WarehouseMod.schematicManager.close();
+        }
         WarehouseMod.schematicManager = new SchematicManager(server);
         WarehouseMod.LOGGER.info("通过 Mixin 初始化仓库管理器");
     }
@@ -23,7 +31,10 @@ public class MinecraftServerMixin {
     @Inject(method = "shutdown", at = @At("HEAD"))
     private void onServerShutdown(CallbackInfo ci) {
         if (WarehouseMod.warehouseManager != null) {
-            WarehouseMod.warehouseManager.saveWarehouse();
+            WarehouseMod.warehouseManager.saveAll();
+        }
+        if (WarehouseMod.schematicManager != null) {
+            WarehouseMod.schematicManager.close();
         }
     }
 }
\ No newline at end of file
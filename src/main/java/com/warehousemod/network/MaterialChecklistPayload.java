@@ -0,0 +1,91 @@
+package com.warehousemod.network;
+
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+
+/**
+ * 材料清单
+ * 只发送物品原始ID和数量（varint），物品名称由客户端自己翻译
+ *
+ * @param mode    FULL 替换整个清单；DELTA 只更新 has；CLEAR 关闭清单
+ * @param title   清单标题，只有 FULL 使用
+ * @param itemIds 物品注册表原始ID
+ * @param needed  需要的数量，只有 FULL 使用
+ * @param has     仓库中现有的数量
+ */
+public record MaterialChecklistPayload(Mode mode, String title, int[] itemIds, int[] needed, int[] has) implements CustomPayload {
+    public static final CustomPayload.Id<MaterialChecklistPayload> ID = new CustomPayload.Id<>(WarehouseNetworkHandler.MATERIAL_CHECKLIST_PACKET);
+    public static final PacketCodec<RegistryByteBuf, MaterialChecklistPayload> CODEC = PacketCodec.of(MaterialChecklistPayload::write, MaterialChecklistPayload::read);
+    private static final int[] NONE = new int[0];
+    // 防止错误的数据包让客户端分配过大的数组
+    private static final int MAX_ENTRIES = 1 << 16;
+    private static final Mode[] MODES = Mode.values();
+
+    public enum Mode {
+        FULL, DELTA, CLEAR
+    }
+
+    public static MaterialChecklistPayload full(String title, int[] itemIds, int[] needed, int[] has) {
+        return new MaterialChecklistPayload(Mode.FULL, title, itemIds, needed, has);
+    }
+
+    public static MaterialChecklistPayload delta(int[] itemIds, int[] has) {
+        return new MaterialChecklistPayload(Mode.DELTA, "", itemIds, NONE, has);
+    }
+
+    public static MaterialChecklistPayload clear() {
+        return new MaterialChecklistPayload(Mode.CLEAR, "", NONE, NONE, NONE);
+    }
+
+    private static MaterialChecklistPayload read(RegistryByteBuf buf) {
+        int ordinal = buf.readByte();
+        if (ordinal < 0 || ordinal >= MODES.length) {
+            throw new DecoderException("未知的材料清单模式: " + ordinal);
+        }
+        Mode mode = MODES[ordinal];
+        if (mode == Mode.CLEAR) {
+            return clear();
+        }
+        String title = mode == Mode.FULL ? buf.readString() : "";
+        int size = buf.readVarInt();
+        if (size < 0 || size > MAX_ENTRIES) {
+            throw new DecoderException("材料清单过大: " + size);
+        }
+        int[] itemIds = new int[size];
+        int[] needed = mode == Mode.FULL ? new int[size] : NONE;
+        int[] has = new int[size];
+        for (int i = 0; i < size; i++) {
+            itemIds[i] = buf.readVarInt();
+            if (mode == Mode.FULL) {
+                needed[i] = buf.readVarInt();
+            }
+            has[i] = buf.readVarInt();
+        }
+        return new MaterialChecklistPayload(mode, title, itemIds, needed, has);
+    }
+
+    private void write(RegistryByteBuf buf) {
+        buf.writeByte(mode.ordinal());
+        if (mode == Mode.CLEAR) {
+            return;
+        }
+        if (mode == Mode.FULL) {
+            buf.writeString(title);
+        }
+        buf.writeVarInt(itemIds.length);
+        for (int i = 0; i < itemIds.length; i++) {
+            buf.writeVarInt(itemIds[i]);
+            if (mode == Mode.FULL) {
+                buf.writeVarInt(needed[i]);
+            }
+            buf.writeVarInt(has[i]);
+        }
+    }
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
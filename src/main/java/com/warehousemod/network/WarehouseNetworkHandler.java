@@ -1,13 +1,17 @@
 package com.warehousemod.network;
 
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.minecraft.util.Identifier;
 
 public class WarehouseNetworkHandler {
     // 使用新的 Identifier.of 方法
     public static final Identifier WAREHOUSE_UPDATE_PACKET = Identifier.of("warehousemod", "warehouse_update");
+    public static final Identifier MATERIAL_CHECKLIST_PACKET = Identifier.of("warehousemod", "material_checklist");
 
     public static void register() {
-        // 可以在这里注册客户端和服务器之间的网络通信
-        // 用于实时更新仓库界面等
+        // 仓库界面的批量槽位更新，客户端没有安装模组时退回原版的槽位同步
+        PayloadTypeRegistry.playS2C().register(WarehouseUpdatePayload.ID, WarehouseUpdatePayload.CODEC);
+        // 材料清单，客户端没有安装模组时改为发送聊天消息
+        PayloadTypeRegistry.playS2C().register(MaterialChecklistPayload.ID, MaterialChecklistPayload.CODEC);
     }
 }
\ No newline at end of file
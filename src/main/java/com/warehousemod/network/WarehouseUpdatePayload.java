@@ -0,0 +1,64 @@
+package com.warehousemod.network;
+
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.item.ItemStack;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 仓库界面的批量槽位更新
+ * 服务器每刻最多发送一次，只包含这一刻发生变化的槽位
+ *
+ * @param syncId   界面的同步ID，客户端当前打开的不是这个界面时忽略
+ * @param revision 服务器上界面的版本号，客户端更新后与服务器保持一致
+ * @param slots    发生变化的槽位
+ */
+public record WarehouseUpdatePayload(int syncId, int revision, List<SlotUpdate> slots) implements CustomPayload {
+    public static final CustomPayload.Id<WarehouseUpdatePayload> ID = new CustomPayload.Id<>(WarehouseNetworkHandler.WAREHOUSE_UPDATE_PACKET);
+    public static final PacketCodec<RegistryByteBuf, WarehouseUpdatePayload> CODEC = PacketCodec.of(WarehouseUpdatePayload::write, WarehouseUpdatePayload::read);
+    // 仓库界面加上玩家背包只有 90 个槽位，防止错误的数据包让客户端分配过大的列表
+    private static final int MAX_SLOTS = 256;
+
+    /**
+     * 一个槽位的新内容
+     */
+    public record SlotUpdate(int slot, ItemStack stack) {
+    }
+
+    private static WarehouseUpdatePayload read(RegistryByteBuf buf) {
+        int syncId = buf.readVarInt();
+        int revision = buf.readVarInt();
+        int count = buf.readVarInt();
+        if (count < 0 || count > MAX_SLOTS) {
+            throw new DecoderException("仓库界面更新的槽位过多: " + count);
+        }
+        List<SlotUpdate> slots = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int slot = buf.readVarInt();
+            if (slot < 0 || slot >= MAX_SLOTS) {
+                throw new DecoderException("仓库界面更新的槽位无效: " + slot);
+            }
+            slots.add(new SlotUpdate(slot, ItemStack.OPTIONAL_PACKET_CODEC.decode(buf)));
+        }
+        return new WarehouseUpdatePayload(syncId, revision, slots);
+    }
+
+    private void write(RegistryByteBuf buf) {
+        buf.writeVarInt(syncId);
+        buf.writeVarInt(revision);
+        buf.writeVarInt(slots.size());
+        for (SlotUpdate update : slots) {
+            buf.writeVarInt(update.slot());
+            ItemStack.OPTIONAL_PACKET_CODEC.encode(buf, update.stack());
+        }
+    }
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
@@ -0,0 +1,37 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+/**
+ * 统计方块实体（箱子等）中保存的物品
+ */
+final class ContainerItems {
+
+    private ContainerItems() {
+    }
+
+    /**
+     * 把方块实体 Items 列表中的物品计入材料
+     * 1.20.5 之前的物品数量是 Count（byte），之后是 count（int）
+     */
+    static void count(NbtCompound blockEntity, MaterialCounts materials) {
+        if (!blockEntity.contains("Items", NbtElement.LIST_TYPE)) {
+            return;
+        }
+        NbtList items = blockEntity.getList("Items", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < items.size(); i++) {
+            NbtCompound item = items.getCompound(i);
+            if (!item.contains("id")) {
+                continue;
+            }
+            int count = item.contains("count") ? item.getInt("count")
+                    : item.contains("Count") ? item.getInt("Count")
+                    : 1;
+            materials.add(MaterialKeys.itemIdByName(item.getString("id")), count);
+        }
+    }
+}
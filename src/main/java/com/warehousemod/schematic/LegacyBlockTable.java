@@ -0,0 +1,380 @@
+package com.warehousemod.schematic;
+
+/**
+ * 1.12 及更早版本的数字方块ID (Blocks) 和数据值 (Data) 到扁平化之后方块名称的映射
+ * 数据值中只有决定方块种类的位会影响结果，朝向、生长阶段等状态被忽略；
+ * 门、床和高花的上半部分不计入材料，双层台阶按两个台阶计算。
+ * 床、头颅、旗帜的颜色和类型保存在方块实体中，这里按默认的红色床、骷髅头颅和白色旗帜统计
+ */
+final class LegacyBlockTable {
+    /**
+     * 方块的一种映射结果
+     *
+     * @param name  方块名称，空字符串表示没有对应的物品（水、传送门、门的上半部分等）
+     * @param count 每个方块对应的物品数量
+     */
+    record Entry(String name, int count) {
+    }
+
+    private static final Entry NONE = new Entry("", 0);
+
+    private static final String[] COLORS = {
+            "white", "orange", "magenta", "light_blue", "yellow", "lime",
+            "pink", "gray", "light_gray", "cyan", "purple", "blue",
+            "brown", "green", "red", "black"
+    };
+    private static final String[] WOODS = {"oak", "spruce", "birch", "jungle", "acacia", "dark_oak"};
+    private static final String[] STONE_SLABS = {
+            "smooth_stone_slab", "sandstone_slab", "petrified_oak_slab", "cobblestone_slab",
+            "brick_slab", "stone_brick_slab", "nether_brick_slab", "quartz_slab"
+    };
+
+    // 方块ID -> 按数据值 (0-15) 排列的结果，未知的ID为 null
+    private static final Entry[][] TABLE = new Entry[256][];
+
+    static {
+        put(0, "");
+        put(1, "stone", "granite", "polished_granite", "diorite", "polished_diorite", "andesite", "polished_andesite");
+        put(2, "grass_block");
+        put(3, "dirt", "coarse_dirt", "podzol");
+        put(4, "cobblestone");
+        put(5, woods("_planks"));
+        put(6, masked(7, woods("_sapling")));
+        put(7, "bedrock");
+        put(8, "");
+        put(9, "");
+        put(10, "");
+        put(11, "");
+        put(12, "sand", "red_sand");
+        put(13, "gravel");
+        put(14, "gold_ore");
+        put(15, "iron_ore");
+        put(16, "coal_ore");
+        put(17, logs("oak", "spruce", "birch", "jungle"));
+        put(18, masked(3, "oak_leaves", "spruce_leaves", "birch_leaves", "jungle_leaves"));
+        put(19, "sponge", "wet_sponge");
+        put(20, "glass");
+        put(21, "lapis_ore");
+        put(22, "lapis_block");
+        put(23, "dispenser");
+        put(24, "sandstone", "chiseled_sandstone", "cut_sandstone");
+        put(25, "note_block");
+        put(26, lowerHalf("red_bed"));
+        put(27, "powered_rail");
+        put(28, "detector_rail");
+        put(29, "sticky_piston");
+        put(30, "cobweb");
+        put(31, "dead_bush", "short_grass", "fern");
+        put(32, "dead_bush");
+        put(33, "piston");
+        put(34, "");
+        put(35, colors("_wool"));
+        put(36, "");
+        put(37, "dandelion");
+        put(38, "poppy", "blue_orchid", "allium", "azure_bluet", "red_tulip", "orange_tulip", "white_tulip", "pink_tulip", "oxeye_daisy");
+        put(39, "brown_mushroom");
+        put(40, "red_mushroom");
+        put(41, "gold_block");
+        put(42, "iron_block");
+        TABLE[43] = doubleSlabs(STONE_SLABS);
+        TABLE[43][8] = new Entry("minecraft:smooth_stone", 1);
+        TABLE[43][9] = new Entry("minecraft:smooth_sandstone", 1);
+        TABLE[43][15] = new Entry("minecraft:smooth_quartz", 1);
+        put(44, masked(7, STONE_SLABS));
+        put(45, "bricks");
+        put(46, "tnt");
+        put(47, "bookshelf");
+        put(48, "mossy_cobblestone");
+        put(49, "obsidian");
+        put(50, "torch");
+        put(51, "");
+        put(52, "spawner");
+        put(53, "oak_stairs");
+        put(54, "chest");
+        put(55, "redstone_wire");
+        put(56, "diamond_ore");
+        put(57, "diamond_block");
+        put(58, "crafting_table");
+        put(59, "wheat");
+        put(60, "farmland");
+        put(61, "furnace");
+        put(62, "furnace");
+        put(63, "oak_sign");
+        put(64, lowerHalf("oak_door"));
+        put(65, "ladder");
+        put(66, "rail");
+        put(67, "cobblestone_stairs");
+        put(68, "oak_sign");
+        put(69, "lever");
+        put(70, "stone_pressure_plate");
+        put(71, lowerHalf("iron_door"));
+        put(72, "oak_pressure_plate");
+        put(73, "redstone_ore");
+        put(74, "redstone_ore");
+        put(75, "redstone_torch");
+        put(76, "redstone_torch");
+        put(77, "stone_button");
+        put(78, "snow");
+        put(79, "ice");
+        put(80, "snow_block");
+        put(81, "cactus");
+        put(82, "clay");
+        put(83, "sugar_cane");
+        put(84, "jukebox");
+        put(85, "oak_fence");
+        put(86, "carved_pumpkin");
+        put(87, "netherrack");
+        put(88, "soul_sand");
+        put(89, "glowstone");
+        put(90, "");
+        put(91, "jack_o_lantern");
+        put(92, "cake");
+        put(93, "repeater");
+        put(94, "repeater");
+        put(95, colors("_stained_glass"));
+        put(96, "oak_trapdoor");
+        put(97, "infested_stone", "infested_cobblestone", "infested_stone_bricks", "infested_mossy_stone_bricks",
+                "infested_cracked_stone_bricks", "infested_chiseled_stone_bricks");
+        put(98, "stone_bricks", "mossy_stone_bricks", "cracked_stone_bricks", "chiseled_stone_bricks");
+        put(99, mushroomBlock("brown_mushroom_block"));
+        put(100, mushroomBlock("red_mushroom_block"));
+        put(101, "iron_bars");
+        put(102, "glass_pane");
+        put(103, "melon");
+        put(104, "pumpkin_stem");
+        put(105, "melon_stem");
+        put(106, "vine");
+        put(107, "oak_fence_gate");
+        put(108, "brick_stairs");
+        put(109, "stone_brick_stairs");
+        put(110, "mycelium");
+        put(111, "lily_pad");
+        put(112, "nether_bricks");
+        put(113, "nether_brick_fence");
+        put(114, "nether_brick_stairs");
+        put(115, "nether_wart");
+        put(116, "enchanting_table");
+        put(117, "brewing_stand");
+        put(118, "cauldron");
+        put(119, "");
+        put(120, "end_portal_frame");
+        put(121, "end_stone");
+        put(122, "dragon_egg");
+        put(123, "redstone_lamp");
+        put(124, "redstone_lamp");
+        TABLE[125] = doubleSlabs(woods("_slab"));
+        put(126, masked(7, woods("_slab")));
+        put(127, "cocoa");
+        put(128, "sandstone_stairs");
+        put(129, "emerald_ore");
+        put(130, "ender_chest");
+        put(131, "tripwire_hook");
+        put(132, "tripwire");
+        put(133, "emerald_block");
+        put(134, "spruce_stairs");
+        put(135, "birch_stairs");
+        put(136, "jungle_stairs");
+        put(137, "command_block");
+        put(138, "beacon");
+        put(139, "cobblestone_wall", "mossy_cobblestone_wall");
+        put(140, "flower_pot");
+        put(141, "carrots");
+        put(142, "potatoes");
+        put(143, "oak_button");
+        put(144, "skeleton_skull");
+        put(145, anvils());
+        put(146, "trapped_chest");
+        put(147, "light_weighted_pressure_plate");
+        put(148, "heavy_weighted_pressure_plate");
+        put(149, "comparator");
+        put(150, "comparator");
+        put(151, "daylight_detector");
+        put(152, "redstone_block");
+        put(153, "nether_quartz_ore");
+        put(154, "hopper");
+        put(155, "quartz_block", "chiseled_quartz_block", "quartz_pillar", "quartz_pillar", "quartz_pillar");
+        put(156, "quartz_stairs");
+        put(157, "activator_rail");
+        put(158, "dropper");
+        put(159, colors("_terracotta"));
+        put(160, colors("_stained_glass_pane"));
+        put(161, masked(1, "acacia_leaves", "dark_oak_leaves"));
+        put(162, logs("acacia", "dark_oak"));
+        put(163, "acacia_stairs");
+        put(164, "dark_oak_stairs");
+        put(165, "slime_block");
+        put(166, "barrier");
+        put(167, "iron_trapdoor");
+        put(168, "prismarine", "prismarine_bricks", "dark_prismarine");
+        put(169, "sea_lantern");
+        put(170, "hay_block");
+        put(171, colors("_carpet"));
+        put(172, "terracotta");
+        put(173, "coal_block");
+        put(174, "packed_ice");
+        put(175, lowerHalf("sunflower", "lilac", "tall_grass", "large_fern", "rose_bush", "peony"));
+        put(176, "white_banner");
+        put(177, "white_banner");
+        put(178, "daylight_detector");
+        put(179, "red_sandstone", "chiseled_red_sandstone", "cut_red_sandstone");
+        put(180, "red_sandstone_stairs");
+        TABLE[181] = doubleSlabs("red_sandstone_slab");
+        TABLE[181][8] = new Entry("minecraft:smooth_red_sandstone", 1);
+        put(182, masked(7, "red_sandstone_slab"));
+        put(183, "spruce_fence_gate");
+        put(184, "birch_fence_gate");
+        put(185, "jungle_fence_gate");
+        put(186, "dark_oak_fence_gate");
+        put(187, "acacia_fence_gate");
+        put(188, "spruce_fence");
+        put(189, "birch_fence");
+        put(190, "jungle_fence");
+        put(191, "dark_oak_fence");
+        put(192, "acacia_fence");
+        put(193, lowerHalf("spruce_door"));
+        put(194, lowerHalf("birch_door"));
+        put(195, lowerHalf("jungle_door"));
+        put(196, lowerHalf("acacia_door"));
+        put(197, lowerHalf("dark_oak_door"));
+        put(198, "end_rod");
+        put(199, "chorus_plant");
+        put(200, "chorus_flower");
+        put(201, "purpur_block");
+        put(202, "purpur_pillar");
+        put(203, "purpur_stairs");
+        TABLE[204] = doubleSlabs("purpur_slab");
+        put(205, masked(7, "purpur_slab"));
+        put(206, "end_stone_bricks");
+        put(207, "beetroots");
+        put(208, "dirt_path");
+        put(209, "");
+        put(210, "repeating_command_block");
+        put(211, "chain_command_block");
+        put(212, "");
+        put(213, "magma_block");
+        put(214, "nether_wart_block");
+        put(215, "red_nether_bricks");
+        put(216, "bone_block");
+        put(217, "structure_void");
+        put(218, "observer");
+        for (int color = 0; color < COLORS.length; color++) {
+            put(219 + color, COLORS[color] + "_shulker_box");
+            put(235 + color, COLORS[color] + "_glazed_terracotta");
+        }
+        put(251, colors("_concrete"));
+        put(252, colors("_concrete_powder"));
+        put(255, "structure_block");
+    }
+
+    private LegacyBlockTable() {
+    }
+
+    /**
+     * @return 未知的方块ID返回 null
+     */
+    static Entry get(int blockId, int data) {
+        Entry[] entries = blockId >= 0 && blockId < TABLE.length ? TABLE[blockId] : null;
+        return entries == null ? null : entries[data & 0xF];
+    }
+
+    /**
+     * 按数据值依次给出名称，超出部分使用第一个名称
+     */
+    private static void put(int blockId, String... names) {
+        Entry[] entries = new Entry[16];
+        for (int data = 0; data < entries.length; data++) {
+            entries[data] = entry(data < names.length ? names[data] : names[0], 1);
+        }
+        TABLE[blockId] = entries;
+    }
+
+    private static Entry entry(String name, int count) {
+        return name.isEmpty() ? NONE : new Entry("minecraft:" + name, count);
+    }
+
+    /**
+     * 只有数据值的低位决定种类，其余位是朝向、生长阶段或上下半
+     */
+    private static String[] masked(int mask, String... names) {
+        String[] result = new String[16];
+        for (int data = 0; data < result.length; data++) {
+            int kind = data & mask;
+            result[data] = kind < names.length ? names[kind] : names[0];
+        }
+        return result;
+    }
+
+    /**
+     * 数据值 0-7 是下半部分，8-15 是上半部分
+     */
+    private static String[] lowerHalf(String... names) {
+        String[] result = new String[16];
+        for (int data = 0; data < result.length; data++) {
+            result[data] = data >= 8 ? "" : data < names.length ? names[data] : names[0];
+        }
+        return result;
+    }
+
+    /**
+     * 原木：低两位是木材种类，高两位是朝向，朝向为 3 时是六面树皮的木头
+     */
+    private static String[] logs(String... woods) {
+        String[] result = new String[16];
+        for (int data = 0; data < result.length; data++) {
+            String wood = (data & 3) < woods.length ? woods[data & 3] : woods[0];
+            result[data] = wood + ((data >> 2) == 3 ? "_wood" : "_log");
+        }
+        return result;
+    }
+
+    /**
+     * 蘑菇方块：数据值 10 和 15 是菌柄
+     */
+    private static String[] mushroomBlock(String cap) {
+        String[] result = new String[16];
+        for (int data = 0; data < result.length; data++) {
+            result[data] = data == 10 || data == 15 ? "mushroom_stem" : cap;
+        }
+        return result;
+    }
+
+    /**
+     * 铁砧：高两位是损坏程度
+     */
+    private static String[] anvils() {
+        String[] kinds = {"anvil", "chipped_anvil", "damaged_anvil"};
+        String[] result = new String[16];
+        for (int data = 0; data < result.length; data++) {
+            result[data] = kinds[Math.min(data >> 2, kinds.length - 1)];
+        }
+        return result;
+    }
+
+    /**
+     * 双层台阶，每个方块需要两个台阶
+     */
+    private static Entry[] doubleSlabs(String... slabs) {
+        Entry[] entries = new Entry[16];
+        for (int data = 0; data < entries.length; data++) {
+            int kind = data & 7;
+            entries[data] = entry(kind < slabs.length ? slabs[kind] : slabs[0], 2);
+        }
+        return entries;
+    }
+
+    private static String[] woods(String suffix) {
+        String[] result = new String[WOODS.length];
+        for (int i = 0; i < WOODS.length; i++) {
+            result[i] = WOODS[i] + suffix;
+        }
+        return result;
+    }
+
+    private static String[] colors(String suffix) {
+        String[] result = new String[COLORS.length];
+        for (int i = 0; i < COLORS.length; i++) {
+            result[i] = COLORS[i] + suffix;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import java.io.IOException;
+
+/**
+ * 旧版 MCEdit Schematic (.schematic)
+ * 方块以数字ID (Blocks) 和数据值 (Data) 保存，每个方块各占一个字节，名称映射见 {@link LegacyBlockTable}
+ */
+public class LegacySchematicFormat implements SchematicFormat {
+    private static final NbtPathFilter TAGS = NbtPathFilter.of(
+            "Blocks",
+            "Data",
+            "TileEntities"
+    );
+
+    @Override
+    public String name() {
+        return "MCEdit Schematic";
+    }
+
+    @Override
+    public NbtPathFilter tags() {
+        return TAGS;
+    }
+
+    @Override
+    public boolean probe(String fileName, NbtCompound root) {
+        return root.contains("Blocks", NbtElement.BYTE_ARRAY_TYPE);
+    }
+
+    @Override
+    public WarehouseMetrics.Operation operation() {
+        return WarehouseMetrics.Operation.PARSE_LEGACY;
+    }
+
+    @Override
+    public MaterialCounts count(NbtCompound root, ParallelBlockCounter blockCounter) throws IOException {
+        MaterialCounts materials = new MaterialCounts();
+
+        byte[] blocks = root.getByteArray("Blocks");
+        byte[] data = root.contains("Data") ? root.getByteArray("Data") : new byte[blocks.length];
+        if (data.length < blocks.length) {
+            throw new IOException("旧版原理图的 Data 长度 (" + data.length + ") 小于 Blocks 长度 (" + blocks.length + ")");
+        }
+
+        // 先按 (方块ID, 数据值) 计数，每种组合只转换一次名称
+        int[] histogram = new int[256 * 16];
+        for (int i = 0; i < blocks.length; i++) {
+            int blockId = blocks[i] & 0xFF;
+            if (blockId != 0) {
+                histogram[(blockId << 4) | (data[i] & 0xF)]++;
+            }
+        }
+        // 映射表中没有的方块ID（更早的版本或模组方块）无法统计，记录下来提示结果不完整
+        StringBuilder unknown = new StringBuilder();
+        int unknownBlocks = 0;
+        for (int key = 0; key < histogram.length; key++) {
+            if (histogram[key] == 0) {
+                continue;
+            }
+            LegacyBlockTable.Entry entry = LegacyBlockTable.get(key >> 4, key & 0xF);
+            if (entry != null && entry.count() == 0) {
+                // 没有对应物品的方块
+                continue;
+            }
+            int itemId = entry == null ? -1 : MaterialKeys.blockItemId(entry.name());
+            if (itemId < 0) {
+                unknown.append(unknown.isEmpty() ? "" : ", ").append(key >> 4).append(':').append(key & 0xF).append(" x").append(histogram[key]);
+                unknownBlocks += histogram[key];
+                continue;
+            }
+            materials.add(itemId, Math.multiplyExact(histogram[key], entry.count()));
+        }
+        if (unknownBlocks > 0) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("旧版原理图中有 {} 个方块的ID无法识别，材料统计不完整: {}", unknownBlocks, unknown);
+        }
+
+        // 解析方块实体
+        NbtList tileEntities = root.getList("TileEntities", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < tileEntities.size(); i++) {
+            ContainerItems.count(tileEntities.getCompound(i), materials);
+        }
+
+        return materials;
+    }
+}
@@ -0,0 +1,41 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+
+import java.io.File;
+
+/**
+ * 可选的 Litematica 集成
+ * 启动时探测一次：找到需要的方法后绑定为 MethodHandle，否则永久标记为不可用，之后的调用不再反射或抛出异常
+ */
+public interface LitematicaAdapter {
+
+    /**
+     * Litematica 未安装或 API 不兼容时使用
+     */
+    LitematicaAdapter UNAVAILABLE = new LitematicaAdapter() {
+        @Override
+        public boolean isAvailable() {
+            return false;
+        }
+
+        @Override
+        public MaterialCounts loadMaterials(File schematicFile) {
+            return null;
+        }
+    };
+
+    boolean isAvailable();
+
+    /**
+     * 使用 Litematica 统计原理图材料，失败或没有材料时返回 null
+     */
+    MaterialCounts loadMaterials(File schematicFile);
+
+    /**
+     * 探测 Litematica API，只应在启动时调用一次
+     */
+    static LitematicaAdapter probe() {
+        return MethodHandleLitematicaAdapter.bind();
+    }
+}
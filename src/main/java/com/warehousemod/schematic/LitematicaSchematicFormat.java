@@ -0,0 +1,104 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Litematica (.litematic)
+ * 每个区域有自己的方块状态调色板和按位打包的 BlockStates 数组
+ */
+public class LitematicaSchematicFormat implements SchematicFormat {
+    private static final NbtPathFilter TAGS = NbtPathFilter.of(
+            "Regions/*/Size",
+            "Regions/*/BlockStatePalette",
+            "Regions/*/BlockStates"
+    );
+
+    @Override
+    public String name() {
+        return "Litematica";
+    }
+
+    @Override
+    public NbtPathFilter tags() {
+        return TAGS;
+    }
+
+    @Override
+    public boolean probe(String fileName, NbtCompound root) {
+        return root.contains("Regions", NbtElement.COMPOUND_TYPE);
+    }
+
+    @Override
+    public WarehouseMetrics.Operation operation() {
+        return WarehouseMetrics.Operation.PARSE_LITEMATICA;
+    }
+
+    @Override
+    public MaterialCounts count(NbtCompound root, ParallelBlockCounter blockCounter) throws IOException {
+        NbtCompound regions = root.getCompound("Regions");
+        List<NbtList> palettes = new ArrayList<>();
+        List<ParallelBlockCounter.Region> countRegions = new ArrayList<>();
+
+        for (String regionName : regions.getKeys()) {
+            NbtCompound region = regions.getCompound(regionName);
+
+            // 解析方块调色板和方块状态
+            if (!region.contains("BlockStatePalette") || !region.contains("BlockStates") || !region.contains("Size")) {
+                com.warehousemod.WarehouseMod.LOGGER.warn("区域 {} 缺少方块数据，跳过", regionName);
+                continue;
+            }
+            NbtList palette = region.getList("BlockStatePalette", NbtElement.COMPOUND_TYPE);
+            long[] blockStates = region.getLongArray("BlockStates");
+            NbtCompound size = region.getCompound("Size");
+            long layerSize = (long) Math.abs(size.getInt("x")) * Math.abs(size.getInt("z"));
+            long volume = layerSize * Math.abs(size.getInt("y"));
+            int bitsPerEntry = PackedBlockStates.bitsPerEntry(palette.size());
+
+            com.warehousemod.WarehouseMod.LOGGER.info("区域 {}: 调色板大小 {}, 方块状态长度 {}, 体积 {}, 每方块 {} 位",
+                    regionName, palette.size(), blockStates.length, volume, bitsPerEntry);
+
+            if (blockStates.length < PackedBlockStates.requiredLongs(volume, bitsPerEntry)) {
+                com.warehousemod.WarehouseMod.LOGGER.warn("区域 {} 的方块状态数组长度不足，跳过", regionName);
+                continue;
+            }
+
+            palettes.add(palette);
+            countRegions.add(new ParallelBlockCounter.Region(blockStates, bitsPerEntry, volume, layerSize));
+        }
+
+        if (countRegions.isEmpty() && !regions.getKeys().isEmpty()) {
+            throw new IOException("Litematica 原理图中没有可读取的方块数据");
+        }
+
+        // 统计每个调色板索引的数量（按区域和Y层并行）
+        int[][] histograms = blockCounter.count(countRegions);
+
+        // 每个调色板条目只解析一次名称
+        MaterialCounts materials = new MaterialCounts();
+        for (int r = 0; r < histograms.length; r++) {
+            NbtList palette = palettes.get(r);
+            int[] histogram = histograms[r];
+            for (int paletteIndex = 0; paletteIndex < palette.size(); paletteIndex++) {
+                int count = histogram[paletteIndex];
+                if (count == 0) {
+                    continue;
+                }
+                NbtCompound blockStateNbt = palette.getCompound(paletteIndex);
+                if (blockStateNbt.contains("Name")) {
+                    // 空气等没有物品形式的方块返回 -1，不计入材料
+                    materials.add(MaterialKeys.blockItemId(blockStateNbt.getString("Name")), count);
+                }
+            }
+        }
+        return materials;
+    }
+}
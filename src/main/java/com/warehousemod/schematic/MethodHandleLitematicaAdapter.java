@@ -0,0 +1,129 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 通过预先绑定的 MethodHandle 调用 Litematica，避免直接依赖该模组
+ */
+final class MethodHandleLitematicaAdapter implements LitematicaAdapter {
+    private static final String SCHEMATIC_CLASS = "fi.dy.masa.litematica.schematic.LitematicaSchematic";
+
+    // (File) -> Object
+    private final MethodHandle loadFromFile;
+    // (Object) -> Map
+    private final MethodHandle materialList;
+
+    private MethodHandleLitematicaAdapter(MethodHandle loadFromFile, MethodHandle materialList) {
+        this.loadFromFile = loadFromFile;
+        this.materialList = materialList;
+    }
+
+    static LitematicaAdapter bind() {
+        Class<?> schematicClass;
+        try {
+            schematicClass = Class.forName(SCHEMATIC_CLASS);
+        } catch (ClassNotFoundException | LinkageError e) {
+            com.warehousemod.WarehouseMod.LOGGER.info("Litematica模组未安装，使用NBT解析原理图");
+            return UNAVAILABLE;
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        // 不同版本的 loadFromFile 签名不同，统一成 (File) -> Object
+        MethodHandle loadFromFile = findStatic(lookup, schematicClass, "loadFromFile", File.class, boolean.class);
+        if (loadFromFile != null) {
+            loadFromFile = MethodHandles.insertArguments(loadFromFile, 1, false);
+        } else {
+            loadFromFile = findStatic(lookup, schematicClass, "loadFromFile", File.class);
+        }
+
+        MethodHandle materialList = findVirtual(lookup, schematicClass, "getMaterialList");
+        if (materialList == null) {
+            materialList = findVirtual(lookup, schematicClass, "getBlockCounts");
+        }
+
+        if (loadFromFile == null || materialList == null) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("已安装的Litematica版本不提供需要的API（loadFromFile: {}, 材料列表: {}），使用NBT解析原理图",
+                    loadFromFile != null, materialList != null);
+            return UNAVAILABLE;
+        }
+
+        com.warehousemod.WarehouseMod.LOGGER.info("已启用Litematica API解析原理图");
+        return new MethodHandleLitematicaAdapter(
+                loadFromFile.asType(MethodType.methodType(Object.class, File.class)),
+                materialList.asType(MethodType.methodType(Map.class, Object.class)));
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public MaterialCounts loadMaterials(File schematicFile) {
+        Map<?, ?> rawMaterials;
+        try {
+            Object schematic = (Object) loadFromFile.invokeExact(schematicFile);
+            if (schematic == null) {
+                com.warehousemod.WarehouseMod.LOGGER.warn("Litematica Schematic加载失败，返回null");
+                return null;
+            }
+            rawMaterials = (Map<?, ?>) materialList.invokeExact(schematic);
+        } catch (Throwable t) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("使用Litematica API解析失败: {}", t.toString());
+            com.warehousemod.WarehouseMod.LOGGER.debug("Litematica API 异常", t);
+            return null;
+        }
+
+        if (rawMaterials == null || rawMaterials.isEmpty()) {
+            com.warehousemod.WarehouseMod.LOGGER.warn("Litematica 返回空的材料列表");
+            return null;
+        }
+
+        // 转换材料格式
+        MaterialCounts materials = new MaterialCounts(rawMaterials.size());
+        for (Map.Entry<?, ?> entry : rawMaterials.entrySet()) {
+            int count = entry.getValue() instanceof Number number ? (int) Math.min(Integer.MAX_VALUE, number.longValue()) : 1;
+            materials.add(MaterialKeys.blockItemId(String.valueOf(entry.getKey())), count);
+        }
+        return materials;
+    }
+
+    private static MethodHandle findStatic(MethodHandles.Lookup lookup, Class<?> owner, String name, Class<?>... parameters) {
+        for (Method method : owner.getMethods()) {
+            if (method.getName().equals(name) && Modifier.isStatic(method.getModifiers())
+                    && Arrays.equals(method.getParameterTypes(), parameters)) {
+                return unreflect(lookup, method);
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle findVirtual(MethodHandles.Lookup lookup, Class<?> owner, String name) {
+        for (Method method : owner.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == 0
+                    && !Modifier.isStatic(method.getModifiers())
+                    && Map.class.isAssignableFrom(method.getReturnType())) {
+                return unreflect(lookup, method);
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle unreflect(MethodHandles.Lookup lookup, Method method) {
+        try {
+            return lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+}
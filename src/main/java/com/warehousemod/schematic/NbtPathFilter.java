@@ -0,0 +1,85 @@
+package com.warehousemod.schematic;
+
+import net.minecraft.nbt.NbtElement;
+
+/**
+ * 流式NBT读取时使用的路径过滤器
+ * 路径以 "/" 分隔，"*" 匹配任意一个键名
+ */
+public class NbtPathFilter {
+
+    public enum Selection {
+        /** 跳过该标签，不分配任何对象 */
+        SKIP,
+        /** 进入该复合标签，只保留其中被选中的子标签 */
+        DESCEND,
+        /** 完整读取该标签 */
+        MATERIALIZE
+    }
+
+    private final String[][] patterns;
+
+    private NbtPathFilter(String[][] patterns) {
+        this.patterns = patterns;
+    }
+
+    public static NbtPathFilter of(String... paths) {
+        String[][] patterns = new String[paths.length][];
+        for (int i = 0; i < paths.length; i++) {
+            patterns[i] = paths[i].split("/");
+        }
+        return new NbtPathFilter(patterns);
+    }
+
+    /**
+     * 合并多个过滤器，任意一个选中即选中
+     */
+    public NbtPathFilter or(NbtPathFilter other) {
+        String[][] merged = new String[patterns.length + other.patterns.length][];
+        System.arraycopy(patterns, 0, merged, 0, patterns.length);
+        System.arraycopy(other.patterns, 0, merged, patterns.length, other.patterns.length);
+        return new NbtPathFilter(merged);
+    }
+
+    /**
+     * 判断复合标签中的一个子标签应如何处理
+     *
+     * @param path  当前复合标签的路径，只有前 depth 个元素有效
+     * @param depth 当前复合标签的深度（根为0）
+     * @param name  子标签的键名
+     * @param type  子标签的类型
+     */
+    public Selection select(String[] path, int depth, String name, byte type) {
+        Selection result = Selection.SKIP;
+
+        for (String[] pattern : patterns) {
+            if (pattern.length <= depth || !matches(pattern[depth], name)) {
+                continue;
+            }
+
+            boolean prefixMatches = true;
+            for (int i = 0; i < depth; i++) {
+                if (!matches(pattern[i], path[i])) {
+                    prefixMatches = false;
+                    break;
+                }
+            }
+            if (!prefixMatches) {
+                continue;
+            }
+
+            if (pattern.length == depth + 1) {
+                return Selection.MATERIALIZE;
+            }
+            if (type == NbtElement.COMPOUND_TYPE) {
+                result = Selection.DESCEND;
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean matches(String segment, String name) {
+        return "*".equals(segment) || segment.equals(name);
+    }
+}
@@ -0,0 +1,68 @@
+package com.warehousemod.schematic;
+
+/**
+ * Litematica BlockStates 紧凑位数组解码
+ * 每个条目占 bitsPerEntry 位，条目之间紧密排列，可以跨越两个 long
+ */
+public final class PackedBlockStates {
+
+    private PackedBlockStates() {
+    }
+
+    /**
+     * 根据调色板大小计算每个条目的位数（Litematica 最少使用2位）
+     */
+    public static int bitsPerEntry(int paletteSize) {
+        return Math.max(2, 32 - Integer.numberOfLeadingZeros(Math.max(1, paletteSize - 1)));
+    }
+
+    /**
+     * 存放给定数量条目所需的 long 数量
+     */
+    public static long requiredLongs(long volume, int bitsPerEntry) {
+        return (volume * bitsPerEntry + 63) >>> 6;
+    }
+
+    /**
+     * 创建计数数组，长度覆盖该位数能表示的所有索引，解码时无需边界判断
+     */
+    public static int[] newHistogram(int bitsPerEntry) {
+        return new int[1 << bitsPerEntry];
+    }
+
+    /**
+     * 统计 [from, to) 范围内每个调色板索引出现的次数
+     */
+    public static void countRange(long[] data, int bitsPerEntry, long from, long to, int[] histogram) {
+        if (from >= to) {
+            return;
+        }
+
+        long mask = (1L << bitsPerEntry) - 1;
+        long startBit = from * bitsPerEntry;
+        int word = (int) (startBit >>> 6);
+        int offset = (int) (startBit & 63);
+        long current = data[word];
+
+        for (long i = from; i < to; i++) {
+            int end = offset + bitsPerEntry;
+            int value;
+            if (end < 64) {
+                value = (int) ((current >>> offset) & mask);
+                offset = end;
+            } else if (end == 64) {
+                value = (int) (current >>> offset);
+                offset = 0;
+                if (++word < data.length) {
+                    current = data[word];
+                }
+            } else {
+                long next = data[++word];
+                value = (int) (((current >>> offset) | (next << (64 - offset))) & mask);
+                current = next;
+                offset = end - 64;
+            }
+            histogram[value]++;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.warehousemod.schematic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 使用 fork/join 并行统计 Litematica 区域的方块
+ * 按区域拆分任务，大区域再按 Y 层切片，每个任务统计到自己的计数数组，最后合并
+ * 调用线程被中断时停止统计，抛出 {@link CancellationException}
+ */
+public class ParallelBlockCounter {
+    // 每统计这么多个方块检查一次是否需要停止
+    private static final long CHECK_INTERVAL = 1 << 20;
+
+    /**
+     * 一个待统计的区域
+     *
+     * @param data         紧凑位数组
+     * @param bitsPerEntry 每个条目的位数
+     * @param volume       条目总数
+     * @param layerSize    每个 Y 层的条目数 (x * z)
+     */
+    public record Region(long[] data, int bitsPerEntry, long volume, long layerSize) {
+    }
+
+    private final int parallelism;
+    private final long minTaskBlocks;
+    private ForkJoinPool pool;
+
+    public ParallelBlockCounter(int parallelism, long minTaskBlocks) {
+        this.parallelism = Math.max(1, parallelism);
+        this.minTaskBlocks = Math.max(1, minTaskBlocks);
+    }
+
+    /**
+     * 统计所有区域，返回值与区域一一对应，每个计数数组的长度为 1 << bitsPerEntry
+     *
+     * @throws CancellationException 调用线程在统计期间被中断（计算超时或被取消）
+     */
+    public int[][] count(List<Region> regions) {
+        long totalBlocks = 0;
+        for (Region region : regions) {
+            totalBlocks += region.volume();
+        }
+
+        if (parallelism == 1 || totalBlocks < minTaskBlocks * 2) {
+            int[][] histograms = new int[regions.size()][];
+            for (int i = 0; i < regions.size(); i++) {
+                Region region = regions.get(i);
+                histograms[i] = PackedBlockStates.newHistogram(region.bitsPerEntry());
+                countRange(region, 0, region.volume(), histograms[i], null);
+            }
+            return histograms;
+        }
+
+        // 工作线程不会收到调用线程的中断，通过 cancelled 通知它们停止
+        AtomicBoolean cancelled = new AtomicBoolean();
+        RegionsTask task = new RegionsTask(regions, cancelled);
+        getPool().execute(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            task.cancel(false);
+            throw new CancellationException("统计方块时被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 分段统计 [from, to)，每段之间检查是否需要停止
+     *
+     * @param cancelled 为 null 时检查当前线程的中断标记
+     */
+    private static void countRange(Region region, long from, long to, int[] histogram, AtomicBoolean cancelled) {
+        for (long start = from; start < to; start += CHECK_INTERVAL) {
+            if (cancelled == null ? Thread.interrupted() : cancelled.get()) {
+                throw new CancellationException("统计方块时被中断");
+            }
+            PackedBlockStates.countRange(region.data(), region.bitsPerEntry(), start, Math.min(to, start + CHECK_INTERVAL), histogram);
+        }
+    }
+
+    public synchronized void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("warehousemod-parse-" + thread.getPoolIndex());
+                // 低于服务器主线程的优先级，避免影响 tick
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    private class RegionsTask extends RecursiveTask<int[][]> {
+        private final List<Region> regions;
+        private final AtomicBoolean cancelled;
+
+        RegionsTask(List<Region> regions, AtomicBoolean cancelled) {
+            this.regions = regions;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected int[][] compute() {
+            List<SlabTask> tasks = new ArrayList<>(regions.size());
+            for (Region region : regions) {
+                long layerSize = Math.max(1, region.layerSize());
+                long layers = (region.volume() + layerSize - 1) / layerSize;
+                tasks.add(new SlabTask(region, 0, layers, cancelled));
+            }
+            invokeAll(tasks);
+
+            int[][] histograms = new int[regions.size()][];
+            for (int i = 0; i < tasks.size(); i++) {
+                histograms[i] = tasks.get(i).join();
+            }
+            return histograms;
+        }
+    }
+
+    private class SlabTask extends RecursiveTask<int[]> {
+        private final Region region;
+        private final long fromLayer;
+        private final long toLayer;
+        private final AtomicBoolean cancelled;
+
+        SlabTask(Region region, long fromLayer, long toLayer, AtomicBoolean cancelled) {
+            this.region = region;
+            this.fromLayer = fromLayer;
+            this.toLayer = toLayer;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected int[] compute() {
+            long layerSize = Math.max(1, region.layerSize());
+            long layers = toLayer - fromLayer;
+
+            if (layers > 1 && layers * layerSize >= minTaskBlocks * 2) {
+                long middle = fromLayer + layers / 2;
+                SlabTask upper = new SlabTask(region, middle, toLayer, cancelled);
+                upper.fork();
+                int[] histogram = new SlabTask(region, fromLayer, middle, cancelled).compute();
+                int[] upperHistogram = upper.join();
+                for (int i = 0; i < histogram.length; i++) {
+                    histogram[i] += upperHistogram[i];
+                }
+                return histogram;
+            }
+
+            int[] histogram = PackedBlockStates.newHistogram(region.bitsPerEntry());
+            long from = fromLayer * layerSize;
+            long to = Math.min(region.volume(), toLayer * layerSize);
+            countRange(region, from, to, histogram, cancelled);
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.warehousemod.schematic;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 读取原理图文件的 NBT 数据，每个文件只打开和读取一次
+ * 根据文件头判断格式：gzip 魔数 (1f 8b) 表示压缩的 NBT，通过一条带缓冲的解压流读取；
+ * 以复合标签类型开头的是未压缩的 NBT，较大的文件直接内存映射后读取
+ */
+public final class SchematicFileReader {
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+    private static final int BUFFER_SIZE = 65536;
+    // 小文件直接读进堆内存，映射反而更慢；映射的文件在回收之前在部分系统上无法删除
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * 文件的存储格式
+     */
+    public enum Encoding {
+        GZIP,
+        UNCOMPRESSED
+    }
+
+    private SchematicFileReader() {
+    }
+
+    /**
+     * 读取文件头判断格式
+     *
+     * @throws IOException 文件为空或者既不是 gzip 也不是 NBT
+     */
+    public static Encoding detect(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // 按位置读取，不改变通道的当前位置
+        }
+        if (header.position() == 0) {
+            throw new IOException("原理图文件为空");
+        }
+        int first = header.get(0) & 0xFF;
+        if (header.position() == 2 && first == GZIP_MAGIC_0 && (header.get(1) & 0xFF) == GZIP_MAGIC_1) {
+            return Encoding.GZIP;
+        }
+        if (first == NbtElement.COMPOUND_TYPE) {
+            return Encoding.UNCOMPRESSED;
+        }
+        throw new IOException(String.format("无法识别的原理图文件格式，文件头: %02x", first));
+    }
+
+    /**
+     * 估算 NBT 数据解压后的大小，只读取文件头和 gzip 尾部记录的原始长度，不解压
+     * gzip 记录的长度只有 32 位并且可能被篡改，因此至少按文件大小计算，实际读取时仍需要用配额限制
+     */
+    public static long uncompressedSize(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (detect(channel) == Encoding.UNCOMPRESSED || size < 4) {
+                return size;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (trailer.hasRemaining() && channel.read(trailer, size - trailer.remaining()) > 0) {
+                // 读取最后 4 个字节
+            }
+            return Math.max(size, Integer.toUnsignedLong(trailer.getInt(0)));
+        }
+    }
+
+    /**
+     * 读取根复合标签，只保留过滤器选中的部分
+     */
+    public static NbtCompound read(Path file, NbtPathFilter filter) throws IOException {
+        return read(file, filter, Long.MAX_VALUE);
+    }
+
+    /**
+     * 读取根复合标签，只保留过滤器选中的部分
+     *
+     * @param maxBytes 读取成对象的数据最多占用多少字节，见 {@link StreamingNbtReader#read(java.io.DataInput, NbtPathFilter, long)}
+     */
+    public static NbtCompound read(Path file, NbtPathFilter filter, long maxBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return switch (detect(channel)) {
+                case GZIP -> readCompressed(channel, filter, maxBytes);
+                case UNCOMPRESSED -> readUncompressed(channel, filter, maxBytes);
+            };
+        }
+    }
+
+    private static NbtCompound readCompressed(FileChannel channel, NbtPathFilter filter, long maxBytes) throws IOException {
+        // 通道由调用者关闭
+        InputStream fileStream = Channels.newInputStream(channel.position(0));
+        InputStream stream = new BufferedInputStream(new GZIPInputStream(fileStream, BUFFER_SIZE), BUFFER_SIZE);
+        return StreamingNbtReader.read(new DataInputStream(stream), filter, maxBytes);
+    }
+
+    private static NbtCompound readUncompressed(FileChannel channel, NbtPathFilter filter, long maxBytes) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer;
+        if (size >= MAP_THRESHOLD) {
+            // 读取映射的内存不会响应中断，由 StreamingNbtReader 检查中断标记
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } else {
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+                // 读到文件末尾或缓冲区写满
+            }
+            buffer.flip();
+        }
+        return StreamingNbtReader.read(new ByteBufferDataInput(buffer), filter, maxBytes);
+    }
+}
@@ -0,0 +1,47 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.nbt.NbtCompound;
+
+import java.io.IOException;
+
+/**
+ * 一种原理图文件格式
+ * 文件只按所有格式 {@link #tags()} 的并集流式读取一次，再依次询问每种格式是否能处理
+ * 其他模组可以通过 "warehousemod:schematic_format" 入口点添加格式，见 {@link SchematicFormats}
+ */
+public interface SchematicFormat {
+
+    /**
+     * 格式名称，用于日志和错误信息
+     */
+    String name();
+
+    /**
+     * 统计材料需要的标签，其余标签在读取时直接跳过
+     */
+    NbtPathFilter tags();
+
+    /**
+     * 判断读取到的数据是否是这种格式，只检查标签是否存在，不能修改 root
+     *
+     * @param fileName 文件名，大多数格式不需要
+     */
+    boolean probe(String fileName, NbtCompound root);
+
+    /**
+     * 统计材料，键为物品注册表原始ID
+     *
+     * @param blockCounter 可以用来并行统计打包的方块状态
+     * @throws IOException 数据不完整或损坏
+     */
+    MaterialCounts count(NbtCompound root, ParallelBlockCounter blockCounter) throws IOException;
+
+    /**
+     * 解析耗时记录在哪一项统计下
+     */
+    default WarehouseMetrics.Operation operation() {
+        return WarehouseMetrics.Operation.PARSE_OTHER;
+    }
+}
@@ -0,0 +1,104 @@
+package com.warehousemod.schematic;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.nbt.NbtCompound;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * 已注册的原理图格式
+ * 内置 Litematica、Sponge v1/v2/v3、旧版 MCEdit 和原版结构 (.nbt)；
+ * 其他模组在 fabric.mod.json 的 "warehousemod:schematic_format" 入口点中声明 {@link SchematicFormat} 的实现即可添加格式，
+ * 它们会排在内置格式之前被询问，因此也可以接管内置格式无法处理的变体
+ */
+public final class SchematicFormats {
+    public static final String ENTRYPOINT = "warehousemod:schematic_format";
+
+    private static final List<SchematicFormat> BUILTIN = List.of(
+            new LitematicaSchematicFormat(),
+            new SpongeSchematicFormat(),
+            new LegacySchematicFormat(),
+            new StructureTemplateFormat()
+    );
+
+    // 注册时整体替换，读取时不需要加锁
+    private static volatile List<SchematicFormat> formats = BUILTIN;
+    private static volatile NbtPathFilter tags = unionTags(BUILTIN);
+
+    private SchematicFormats() {
+    }
+
+    /**
+     * 加载其他模组通过入口点提供的格式，模组初始化时调用一次
+     */
+    public static void loadEntrypoints() {
+        List<SchematicFormat> provided;
+        try {
+            provided = FabricLoader.getInstance().getEntrypoints(ENTRYPOINT, SchematicFormat.class);
+        } catch (RuntimeException e) {
+            com.warehousemod.WarehouseMod.LOGGER.error("加载原理图格式入口点失败", e);
+            return;
+        }
+        for (SchematicFormat format : provided) {
+            register(format);
+        }
+    }
+
+    /**
+     * 添加一种格式，排在内置格式和之前添加的格式前面
+     */
+    public static synchronized void register(SchematicFormat format) {
+        List<SchematicFormat> updated = new ArrayList<>(formats.size() + 1);
+        updated.add(format);
+        updated.addAll(formats);
+        formats = List.copyOf(updated);
+        tags = unionTags(formats);
+        com.warehousemod.WarehouseMod.LOGGER.info("已注册原理图格式: {}", format.name());
+    }
+
+    public static List<SchematicFormat> all() {
+        return formats;
+    }
+
+    /**
+     * 所有格式需要的标签
+     */
+    public static NbtPathFilter tags() {
+        return tags;
+    }
+
+    /**
+     * 找到第一个能处理这份数据的格式
+     *
+     * @return 没有格式能处理时返回 null
+     */
+    public static SchematicFormat find(String fileName, NbtCompound root) {
+        for (SchematicFormat format : formats) {
+            if (format.probe(fileName, root)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 所有格式的名称，用于错误提示
+     */
+    public static String names() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (SchematicFormat format : formats) {
+            joiner.add(format.name());
+        }
+        return joiner.toString();
+    }
+
+    private static NbtPathFilter unionTags(List<SchematicFormat> formats) {
+        NbtPathFilter union = NbtPathFilter.of();
+        for (SchematicFormat format : formats) {
+            union = union.or(format.tags());
+        }
+        return union;
+    }
+}
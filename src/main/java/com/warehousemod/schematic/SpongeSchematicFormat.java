@@ -0,0 +1,103 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sponge Schematic (.schem / .schematic)
+ * v1/v2 的方块数据位于根标签的 Palette 和 BlockData；v3 整体放在 Schematic 标签下，方块数据位于 Blocks/Palette 和 Blocks/Data
+ * 方块实体在 v1 中叫 TileEntities，v3 中方块实体的数据位于 Data 标签下
+ */
+public class SpongeSchematicFormat implements SchematicFormat {
+    private static final NbtPathFilter TAGS = NbtPathFilter.of(
+            "Version",
+            "Palette",
+            "BlockData",
+            "BlockEntities",
+            "TileEntities",
+            "Schematic/Version",
+            "Schematic/Blocks/Palette",
+            "Schematic/Blocks/Data",
+            "Schematic/Blocks/BlockEntities"
+    );
+
+    @Override
+    public String name() {
+        return "Sponge Schematic";
+    }
+
+    @Override
+    public NbtPathFilter tags() {
+        return TAGS;
+    }
+
+    @Override
+    public boolean probe(String fileName, NbtCompound root) {
+        return root.contains("Schematic", NbtElement.COMPOUND_TYPE)
+                || (root.contains("Palette", NbtElement.COMPOUND_TYPE) && root.contains("BlockData", NbtElement.BYTE_ARRAY_TYPE));
+    }
+
+    @Override
+    public WarehouseMetrics.Operation operation() {
+        return WarehouseMetrics.Operation.PARSE_SPONGE;
+    }
+
+    @Override
+    public MaterialCounts count(NbtCompound root, ParallelBlockCounter blockCounter) throws IOException {
+        MaterialCounts materials = new MaterialCounts();
+
+        boolean version3 = root.contains("Schematic", NbtElement.COMPOUND_TYPE);
+        NbtCompound blockContainer = version3 ? root.getCompound("Schematic").getCompound("Blocks") : root;
+        String blockDataKey = version3 ? "Data" : "BlockData";
+
+        // 解析方块状态
+        if (blockContainer.contains("Palette") && blockContainer.contains(blockDataKey)) {
+            NbtCompound palette = blockContainer.getCompound("Palette");
+            byte[] blockData = blockContainer.getByteArray(blockDataKey);
+
+            // 构建一次反向调色板: 状态ID -> 物品原始ID
+            int maxId = -1;
+            for (String blockState : palette.getKeys()) {
+                maxId = Math.max(maxId, palette.getInt(blockState));
+            }
+            int[] itemIds = new int[maxId + 1];
+            Arrays.fill(itemIds, -1);
+            for (String blockState : palette.getKeys()) {
+                int stateId = palette.getInt(blockState);
+                if (stateId >= 0) {
+                    itemIds[stateId] = MaterialKeys.blockItemId(blockState);
+                }
+            }
+
+            // 统计每个状态ID的数量
+            int[] histogram = new int[itemIds.length];
+            long blocks = VarIntBlockData.count(blockData, histogram);
+            com.warehousemod.WarehouseMod.LOGGER.info("Sponge 原理图: 调色板大小 {}, 方块数 {}", palette.getKeys().size(), blocks);
+
+            for (int stateId = 0; stateId < itemIds.length; stateId++) {
+                if (histogram[stateId] > 0) {
+                    materials.add(itemIds[stateId], histogram[stateId]);
+                }
+            }
+        } else if (version3) {
+            throw new IOException("Sponge v3 原理图缺少 Blocks/Palette 或 Blocks/Data");
+        }
+
+        // 解析方块实体（如箱子内容）
+        String blockEntitiesKey = blockContainer.contains("BlockEntities") ? "BlockEntities" : "TileEntities";
+        NbtList blockEntities = blockContainer.getList(blockEntitiesKey, NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < blockEntities.size(); i++) {
+            NbtCompound blockEntity = blockEntities.getCompound(i);
+            ContainerItems.count(version3 ? blockEntity.getCompound("Data") : blockEntity, materials);
+        }
+
+        return materials;
+    }
+}
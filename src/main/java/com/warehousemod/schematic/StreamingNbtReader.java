@@ -0,0 +1,271 @@
+package com.warehousemod.schematic;
+
+import net.minecraft.nbt.NbtByte;
+import net.minecraft.nbt.NbtByteArray;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtDouble;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtFloat;
+import net.minecraft.nbt.NbtInt;
+import net.minecraft.nbt.NbtIntArray;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLong;
+import net.minecraft.nbt.NbtLongArray;
+import net.minecraft.nbt.NbtShort;
+import net.minecraft.nbt.NbtString;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * 流式NBT读取器
+ * 只遍历一次输入流，只有被 {@link NbtPathFilter} 选中的标签才会被读取成对象，
+ * 其余标签直接跳过字节，不构建任何NBT对象
+ * 可以限制读取成对象的数据量，超出时在分配之前就停止读取，避免损坏或恶意的文件耗尽内存
+ * 读取线程被中断时抛出 {@link InterruptedIOException}
+ */
+public class StreamingNbtReader {
+    private static final int MAX_DEPTH = 512;
+    // 每个NBT对象按这么多字节计入配额（对象头和引用）
+    private static final int ELEMENT_OVERHEAD = 16;
+    // 读取数组时每隔这么多个元素检查一次中断
+    private static final int INTERRUPT_CHECK_MASK = 0xFFFF;
+
+    private final DataInput input;
+    private final NbtPathFilter filter;
+    private final String[] path = new String[MAX_DEPTH];
+    private final long maxBytes;
+    private long remainingBytes;
+
+    private StreamingNbtReader(DataInput input, NbtPathFilter filter, long maxBytes) {
+        this.input = input;
+        this.filter = filter;
+        this.maxBytes = maxBytes;
+        this.remainingBytes = maxBytes;
+    }
+
+    /**
+     * 读取根复合标签，只保留过滤器选中的部分
+     */
+    public static NbtCompound read(DataInput input, NbtPathFilter filter) throws IOException {
+        return read(input, filter, Long.MAX_VALUE);
+    }
+
+    /**
+     * 读取根复合标签，只保留过滤器选中的部分
+     *
+     * @param maxBytes 读取成对象的数据最多占用多少字节（估算值），超出时抛出 IOException
+     */
+    public static NbtCompound read(DataInput input, NbtPathFilter filter, long maxBytes) throws IOException {
+        return new StreamingNbtReader(input, filter, maxBytes).readRoot();
+    }
+
+    private NbtCompound readRoot() throws IOException {
+        byte type = input.readByte();
+        if (type != NbtElement.COMPOUND_TYPE) {
+            throw new IOException("根标签不是复合标签，类型: " + type);
+        }
+        skipString();
+        return readFilteredCompound(0);
+    }
+
+    private NbtCompound readFilteredCompound(int depth) throws IOException {
+        checkDepth(depth);
+        charge(ELEMENT_OVERHEAD);
+        NbtCompound compound = new NbtCompound();
+
+        byte type;
+        while ((type = input.readByte()) != NbtElement.END_TYPE) {
+            String name = input.readUTF();
+            switch (filter.select(path, depth, name, type)) {
+                case MATERIALIZE -> {
+                    charge(2L * name.length());
+                    compound.put(name, readElement(type, depth + 1));
+                }
+                case DESCEND -> {
+                    path[depth] = name;
+                    compound.put(name, readFilteredCompound(depth + 1));
+                }
+                default -> skipElement(type, depth + 1);
+            }
+        }
+
+        return compound;
+    }
+
+    private NbtElement readElement(byte type, int depth) throws IOException {
+        checkDepth(depth);
+        charge(ELEMENT_OVERHEAD);
+
+        switch (type) {
+            case NbtElement.BYTE_TYPE:
+                return NbtByte.of(input.readByte());
+            case NbtElement.SHORT_TYPE:
+                return NbtShort.of(input.readShort());
+            case NbtElement.INT_TYPE:
+                return NbtInt.of(input.readInt());
+            case NbtElement.LONG_TYPE:
+                return NbtLong.of(input.readLong());
+            case NbtElement.FLOAT_TYPE:
+                return NbtFloat.of(input.readFloat());
+            case NbtElement.DOUBLE_TYPE:
+                return NbtDouble.of(input.readDouble());
+            case NbtElement.BYTE_ARRAY_TYPE: {
+                byte[] bytes = new byte[readLength(1)];
+                input.readFully(bytes);
+                return new NbtByteArray(bytes);
+            }
+            case NbtElement.STRING_TYPE: {
+                String value = input.readUTF();
+                charge(2L * value.length());
+                return NbtString.of(value);
+            }
+            case NbtElement.LIST_TYPE: {
+                byte elementType = input.readByte();
+                int length = readLength();
+                NbtList list = new NbtList();
+                for (int i = 0; i < length; i++) {
+                    list.add(readElement(elementType, depth + 1));
+                }
+                return list;
+            }
+            case NbtElement.COMPOUND_TYPE: {
+                NbtCompound compound = new NbtCompound();
+                byte childType;
+                while ((childType = input.readByte()) != NbtElement.END_TYPE) {
+                    String name = input.readUTF();
+                    charge(2L * name.length());
+                    compound.put(name, readElement(childType, depth + 1));
+                }
+                return compound;
+            }
+            case NbtElement.INT_ARRAY_TYPE: {
+                int[] ints = new int[readLength(Integer.BYTES)];
+                for (int i = 0; i < ints.length; i++) {
+                    if ((i & INTERRUPT_CHECK_MASK) == 0) {
+                        checkInterrupted();
+                    }
+                    ints[i] = input.readInt();
+                }
+                return new NbtIntArray(ints);
+            }
+            case NbtElement.LONG_ARRAY_TYPE: {
+                long[] longs = new long[readLength(Long.BYTES)];
+                for (int i = 0; i < longs.length; i++) {
+                    if ((i & INTERRUPT_CHECK_MASK) == 0) {
+                        checkInterrupted();
+                    }
+                    longs[i] = input.readLong();
+                }
+                return new NbtLongArray(longs);
+            }
+            default:
+                throw new IOException("未知的NBT标签类型: " + type);
+        }
+    }
+
+    private void skipElement(byte type, int depth) throws IOException {
+        checkDepth(depth);
+        checkInterrupted();
+
+        switch (type) {
+            case NbtElement.BYTE_TYPE -> skipFully(1);
+            case NbtElement.SHORT_TYPE -> skipFully(2);
+            case NbtElement.INT_TYPE, NbtElement.FLOAT_TYPE -> skipFully(4);
+            case NbtElement.LONG_TYPE, NbtElement.DOUBLE_TYPE -> skipFully(8);
+            case NbtElement.BYTE_ARRAY_TYPE -> skipFully(readLength());
+            case NbtElement.STRING_TYPE -> skipString();
+            case NbtElement.LIST_TYPE -> {
+                byte elementType = input.readByte();
+                int length = readLength();
+                int fixedSize = fixedSize(elementType);
+                if (fixedSize > 0) {
+                    skipFully((long) fixedSize * length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        skipElement(elementType, depth + 1);
+                    }
+                }
+            }
+            case NbtElement.COMPOUND_TYPE -> {
+                byte childType;
+                while ((childType = input.readByte()) != NbtElement.END_TYPE) {
+                    skipString();
+                    skipElement(childType, depth + 1);
+                }
+            }
+            case NbtElement.INT_ARRAY_TYPE -> skipFully(4L * readLength());
+            case NbtElement.LONG_ARRAY_TYPE -> skipFully(8L * readLength());
+            default -> throw new IOException("未知的NBT标签类型: " + type);
+        }
+    }
+
+    private static int fixedSize(byte type) {
+        return switch (type) {
+            case NbtElement.BYTE_TYPE -> 1;
+            case NbtElement.SHORT_TYPE -> 2;
+            case NbtElement.INT_TYPE, NbtElement.FLOAT_TYPE -> 4;
+            case NbtElement.LONG_TYPE, NbtElement.DOUBLE_TYPE -> 8;
+            default -> 0;
+        };
+    }
+
+    private int readLength() throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("NBT数组长度无效: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * 读取数组长度，并在分配数组之前计入配额
+     */
+    private int readLength(int elementBytes) throws IOException {
+        int length = readLength();
+        charge((long) length * elementBytes);
+        return length;
+    }
+
+    private void charge(long bytes) throws IOException {
+        checkInterrupted();
+        remainingBytes -= bytes;
+        if (remainingBytes < 0) {
+            throw new IOException("NBT数据超过内存配额 (" + maxBytes + " 字节)");
+        }
+    }
+
+    private void skipString() throws IOException {
+        skipFully(input.readUnsignedShort());
+    }
+
+    private void skipFully(long bytes) throws IOException {
+        while (bytes > 0) {
+            checkInterrupted();
+            int skipped = input.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // 部分流（例如GZIP）可能暂时跳不过去，逐字节读取以确认是否到达末尾
+                input.readByte();
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * 解析线程被中断（计算超时或被取消）时停止读取
+     * 内存映射的文件不经过可中断的通道读取，只能在这里检查
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException("读取原理图时被中断");
+        }
+    }
+
+    private static void checkDepth(int depth) throws IOException {
+        if (depth >= MAX_DEPTH) {
+            throw new IOException("NBT嵌套层级过深: " + depth);
+        }
+    }
+}
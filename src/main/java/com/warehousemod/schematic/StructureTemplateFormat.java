@@ -0,0 +1,74 @@
+package com.warehousemod.schematic;
+
+import com.warehousemod.material.MaterialCounts;
+import com.warehousemod.material.MaterialKeys;
+import com.warehousemod.metrics.WarehouseMetrics;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import java.io.IOException;
+
+/**
+ * 原版结构方块保存的结构 (.nbt)
+ * palette 是方块状态列表，blocks 中每个方块记录 pos、state（调色板索引）和可选的方块实体 nbt；
+ * 有多个随机调色板时保存在 palettes 中，这里按第一个统计
+ */
+public class StructureTemplateFormat implements SchematicFormat {
+    private static final NbtPathFilter TAGS = NbtPathFilter.of(
+            "palette",
+            "palettes",
+            "blocks"
+    );
+
+    @Override
+    public String name() {
+        return "原版结构";
+    }
+
+    @Override
+    public NbtPathFilter tags() {
+        return TAGS;
+    }
+
+    @Override
+    public boolean probe(String fileName, NbtCompound root) {
+        return root.contains("blocks", NbtElement.LIST_TYPE)
+                && (root.contains("palette", NbtElement.LIST_TYPE) || root.contains("palettes", NbtElement.LIST_TYPE));
+    }
+
+    @Override
+    public WarehouseMetrics.Operation operation() {
+        return WarehouseMetrics.Operation.PARSE_STRUCTURE;
+    }
+
+    @Override
+    public MaterialCounts count(NbtCompound root, ParallelBlockCounter blockCounter) throws IOException {
+        NbtList palette = root.contains("palette", NbtElement.LIST_TYPE)
+                ? root.getList("palette", NbtElement.COMPOUND_TYPE)
+                : root.getList("palettes", NbtElement.LIST_TYPE).getList(0);
+
+        MaterialCounts materials = new MaterialCounts();
+        int[] histogram = new int[palette.size()];
+        NbtList blocks = root.getList("blocks", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < blocks.size(); i++) {
+            NbtCompound block = blocks.getCompound(i);
+            int state = block.getInt("state");
+            if (state < 0 || state >= histogram.length) {
+                throw new IOException("结构中方块的调色板索引超出范围: " + state + "（调色板大小 " + histogram.length + "）");
+            }
+            histogram[state]++;
+            if (block.contains("nbt", NbtElement.COMPOUND_TYPE)) {
+                ContainerItems.count(block.getCompound("nbt"), materials);
+            }
+        }
+
+        // 每个调色板条目只解析一次名称，结构空位等没有物品形式的方块不计入材料
+        for (int state = 0; state < histogram.length; state++) {
+            if (histogram[state] > 0) {
+                materials.add(MaterialKeys.blockItemId(palette.getCompound(state).getString("Name")), histogram[state]);
+            }
+        }
+        return materials;
+    }
+}
@@ -0,0 +1,52 @@
+package com.warehousemod.schematic;
+
+/**
+ * Sponge Schematic BlockData 解码
+ * 每个方块的调色板ID以 VarInt 编码，ID 小于128时只占一个字节
+ */
+public final class VarIntBlockData {
+
+    private VarIntBlockData() {
+    }
+
+    /**
+     * 解码全部方块并按调色板ID计数
+     *
+     * @return 解码出的方块数量
+     */
+    public static long count(byte[] data, int[] histogram) {
+        long blocks = 0;
+        int length = data.length;
+        int i = 0;
+
+        while (i < length) {
+            int b = data[i++];
+            int value;
+            if (b >= 0) {
+                value = b;
+            } else {
+                value = b & 0x7F;
+                int shift = 7;
+                do {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("BlockData 在 VarInt 中间结束");
+                    }
+                    if (shift >= 35) {
+                        throw new IllegalArgumentException("BlockData 中的 VarInt 过长");
+                    }
+                    b = data[i++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+            }
+
+            if (value < 0 || value >= histogram.length) {
+                throw new IllegalArgumentException("调色板ID超出范围: " + value);
+            }
+            histogram[value]++;
+            blocks++;
+        }
+
+        return blocks;
+    }
+}
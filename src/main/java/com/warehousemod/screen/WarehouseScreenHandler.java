@@ -1,16 +1,73 @@
 package com.warehousemod.screen;
 
+import com.warehousemod.manager.Warehouse;
+import com.warehousemod.network.WarehouseUpdatePayload;
+import com.warehousemod.storage.WarehouseStorage;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.LoreComponent;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.Inventory;
 import net.minecraft.inventory.SimpleInventory;
 import net.minecraft.item.ItemStack;
-import net.minecraft.screen.GenericContainerScreenHandler;
+import net.minecraft.item.Items;
+import net.minecraft.screen.ScreenHandler;
 import net.minecraft.screen.ScreenHandlerType;
+import net.minecraft.screen.SlotActionType;
+import net.minecraft.screen.slot.Slot;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
 
-public class WarehouseScreenHandler extends GenericContainerScreenHandler {
-    public WarehouseScreenHandler(int syncId, PlayerInventory playerInventory, Inventory inventory) {
-        super(ScreenHandlerType.GENERIC_9X6, syncId, playerInventory, inventory, 6);
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分页的仓库界面
+ * 前 5 行显示当前页的物品，最后一行是翻页按钮；界面中的物品只是存储内容的展示，
+ * 点击时直接从存储中取出或放入，翻页时只需要同步这一页的 54 个槽位
+ * 其他玩家造成的变化由 Warehouse 每刻汇总一次后推送，装了模组的客户端一次收到这一刻的所有槽位变化
+ */
+public class WarehouseScreenHandler extends ScreenHandler {
+    private static final int ROWS = 6;
+    public static final int SLOT_COUNT = ROWS * 9;
+    public static final int PAGE_SIZE = (ROWS - 1) * 9;
+    private static final int PREV_SLOT = PAGE_SIZE;
+    private static final int INFO_SLOT = PAGE_SIZE + 4;
+    private static final int NEXT_SLOT = PAGE_SIZE + 8;
+
+    private final Warehouse warehouse;
+    private final WarehouseStorage storage;
+    private final PlayerEntity player;
+    private final SimpleInventory view = new SimpleInventory(SLOT_COUNT);
+    private int page;
+
+    public WarehouseScreenHandler(int syncId, PlayerInventory playerInventory, Warehouse warehouse) {
+        super(ScreenHandlerType.GENERIC_9X6, syncId);
+        this.warehouse = warehouse;
+        this.storage = warehouse.getStorage();
+        this.player = playerInventory.player;
+
+        // 与原版 9x6 箱子界面相同的槽位布局，客户端不需要额外的代码
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < 9; col++) {
+                addSlot(new ViewSlot(view, col + row * 9, 8 + col * 18, 18 + row * 18));
+            }
+        }
+        int offset = (ROWS - 4) * 18;
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 9; col++) {
+                addSlot(new Slot(playerInventory, col + row * 9 + 9, 8 + col * 18, 103 + row * 18 + offset));
+            }
+        }
+        for (int col = 0; col < 9; col++) {
+            addSlot(new Slot(playerInventory, col, 8 + col * 18, 161 + offset));
+        }
+
+        warehouse.addViewer(this);
+        refreshPage();
     }
 
     @Override
@@ -19,7 +76,232 @@ public class WarehouseScreenHandler extends GenericContainerScreenHandler {
     }
 
     @Override
-    public ItemStack quickMove(PlayerEntity player, int slot) {
-        return super.quickMove(player, slot);
+    public void onSlotClick(int slotIndex, int button, SlotActionType actionType, PlayerEntity player) {
+        if (slotIndex >= 0 && slotIndex < view.size()) {
+            if (slotIndex >= PAGE_SIZE) {
+                clickControl(slotIndex, actionType);
+            } else {
+                clickView(slotIndex, button, actionType, player);
+                // 点击的玩家立即看到结果，其他查看者在这一刻结束时统一更新
+                refreshPage();
+            }
+            return;
+        }
+        super.onSlotClick(slotIndex, button, actionType, player);
+    }
+
+    @Override
+    public ItemStack quickMove(PlayerEntity player, int slotIndex) {
+        if (slotIndex < view.size()) {
+            ItemVariant variant = variantAt(slotIndex);
+            if (variant != null) {
+                // 取出一组放进玩家背包，放不下的部分留在仓库中
+                ItemStack stack = variant.toStack((int) Math.min(storage.getCount(variant), maxCount(variant)));
+                int amount = stack.getCount();
+                insertItem(stack, view.size(), slots.size(), true);
+                storage.extract(variant, amount - stack.getCount());
+            }
+            return ItemStack.EMPTY;
+        }
+
+        Slot slot = slots.get(slotIndex);
+        if (slot.hasStack()) {
+            ItemStack stack = slot.getStack();
+            storage.insert(ItemVariant.of(stack), stack.getCount());
+            slot.setStack(ItemStack.EMPTY);
+        }
+        return ItemStack.EMPTY;
+    }
+
+    @Override
+    public void onClosed(PlayerEntity player) {
+        super.onClosed(player);
+        warehouse.removeViewer(this);
+    }
+
+    private void clickControl(int slotIndex, SlotActionType actionType) {
+        if (actionType != SlotActionType.PICKUP) {
+            return;
+        }
+        if (slotIndex == PREV_SLOT && page > 0) {
+            page--;
+            refreshPage();
+        } else if (slotIndex == NEXT_SLOT && page < pageCount() - 1) {
+            page++;
+            refreshPage();
+        }
+    }
+
+    private void clickView(int slotIndex, int button, SlotActionType actionType, PlayerEntity player) {
+        ItemVariant variant = variantAt(slotIndex);
+        ItemStack cursor = getCursorStack();
+
+        switch (actionType) {
+            case PICKUP -> {
+                if (!cursor.isEmpty()) {
+                    // 放入手上的物品，右键只放入一个
+                    int amount = button == 1 ? 1 : cursor.getCount();
+                    storage.insert(ItemVariant.of(cursor), amount);
+                    cursor.decrement(amount);
+                    setCursorStack(cursor);
+                } else if (variant != null) {
+                    // 取出一组，右键取出一半
+                    long amount = Math.min(storage.getCount(variant), maxCount(variant));
+                    if (button == 1) {
+                        amount = (amount + 1) / 2;
+                    }
+                    setCursorStack(variant.toStack((int) storage.extract(variant, amount)));
+                }
+            }
+            case QUICK_MOVE -> quickMove(player, slotIndex);
+            case SWAP -> {
+                PlayerInventory inventory = player.getInventory();
+                ItemStack target = inventory.getStack(button);
+                if (!target.isEmpty()) {
+                    storage.insert(ItemVariant.of(target), target.getCount());
+                    inventory.setStack(button, ItemStack.EMPTY);
+                } else if (variant != null) {
+                    long amount = Math.min(storage.getCount(variant), maxCount(variant));
+                    inventory.setStack(button, variant.toStack((int) storage.extract(variant, amount)));
+                }
+            }
+            case THROW -> {
+                if (cursor.isEmpty() && variant != null) {
+                    long amount = button == 0 ? 1 : Math.min(storage.getCount(variant), maxCount(variant));
+                    player.dropItem(variant.toStack((int) storage.extract(variant, amount)), true);
+                }
+            }
+            default -> {
+                // 复制、拖动分配和双击收集不作用于仓库槽位
+            }
+        }
+    }
+
+    /**
+     * 当前页码，超出范围时先调整到最后一页
+     */
+    public int clampPage() {
+        page = Math.min(page, pageCount(storage) - 1);
+        return page;
+    }
+
+    /**
+     * 用新生成的一页内容更新界面，只有发生变化的槽位会被发送
+     * 客户端装了模组时把变化合并成一个数据包发送，否则交给原版的槽位同步
+     *
+     * @param stacks 由 buildPage 生成，可以被多个查看同一页的界面共用，不能被修改
+     */
+    public void updateView(ItemStack[] stacks) {
+        List<WarehouseUpdatePayload.SlotUpdate> changed = new ArrayList<>();
+        for (int slot = 0; slot < stacks.length; slot++) {
+            if (!ItemStack.areEqual(view.getStack(slot), stacks[slot])) {
+                view.setStack(slot, stacks[slot]);
+                changed.add(new WarehouseUpdatePayload.SlotUpdate(slot, stacks[slot]));
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        if (player instanceof ServerPlayerEntity serverPlayer && ServerPlayNetworking.canSend(serverPlayer, WarehouseUpdatePayload.ID)) {
+            // 记录为客户端已有的内容，原版的同步不会再逐个发送这些槽位
+            for (WarehouseUpdatePayload.SlotUpdate update : changed) {
+                setPreviousTrackedSlot(update.slot(), update.stack());
+            }
+            ServerPlayNetworking.send(serverPlayer, new WarehouseUpdatePayload(syncId, getRevision(), changed));
+        }
+    }
+
+    private ItemVariant variantAt(int slotIndex) {
+        int index = page * PAGE_SIZE + slotIndex;
+        return slotIndex < PAGE_SIZE && index < storage.size() ? storage.getVariant(index) : null;
+    }
+
+    private int pageCount() {
+        return pageCount(storage);
+    }
+
+    private static int pageCount(WarehouseStorage storage) {
+        return Math.max(1, (storage.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    private void refreshPage() {
+        updateView(buildPage(storage, clampPage()));
+    }
+
+    /**
+     * 生成某一页的 54 个展示物品，页码必须在范围内
+     */
+    public static ItemStack[] buildPage(WarehouseStorage storage, int page) {
+        ItemStack[] stacks = new ItemStack[SLOT_COUNT];
+        int pages = pageCount(storage);
+        int start = page * PAGE_SIZE;
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            int index = start + i;
+            stacks[i] = index < storage.size() ? displayStack(storage.getVariant(index), storage.getCount(index)) : ItemStack.EMPTY;
+        }
+
+        for (int slot = PAGE_SIZE; slot < SLOT_COUNT; slot++) {
+            stacks[slot] = filler();
+        }
+        if (page > 0) {
+            stacks[PREV_SLOT] = button(Text.literal("上一页"));
+        }
+        if (page < pages - 1) {
+            stacks[NEXT_SLOT] = button(Text.literal("下一页"));
+        }
+
+        ItemStack info = new ItemStack(Items.PAPER);
+        info.set(DataComponentTypes.CUSTOM_NAME, Text.literal("第 " + (page + 1) + "/" + pages + " 页").formatted(Formatting.YELLOW));
+        info.set(DataComponentTypes.LORE, new LoreComponent(List.of(
+                Text.literal("物品种类: " + storage.size()).formatted(Formatting.GRAY),
+                Text.literal("物品总数: " + storage.getTotalCount()).formatted(Formatting.GRAY))));
+        stacks[INFO_SLOT] = info;
+        return stacks;
+    }
+
+    private static ItemStack displayStack(ItemVariant variant, long count) {
+        ItemStack stack = variant.toStack((int) Math.min(count, maxCount(variant)));
+        if (count > stack.getCount()) {
+            stack.set(DataComponentTypes.LORE, new LoreComponent(List.of(
+                    Text.literal("仓库中共有: " + count).formatted(Formatting.GRAY))));
+        }
+        return stack;
+    }
+
+    private static int maxCount(ItemVariant variant) {
+        // 堆叠上限可能被物品组件修改
+        return variant.toStack().getMaxCount();
+    }
+
+    private static ItemStack button(Text name) {
+        ItemStack stack = new ItemStack(Items.ARROW);
+        stack.set(DataComponentTypes.CUSTOM_NAME, name.copy().formatted(Formatting.GREEN));
+        return stack;
+    }
+
+    private static ItemStack filler() {
+        ItemStack stack = new ItemStack(Items.GRAY_STAINED_GLASS_PANE);
+        stack.set(DataComponentTypes.CUSTOM_NAME, Text.empty());
+        return stack;
+    }
+
+    /**
+     * 展示用的槽位，原版的放入/取出逻辑不能直接修改它
+     */
+    private static class ViewSlot extends Slot {
+        ViewSlot(Inventory inventory, int index, int x, int y) {
+            super(inventory, index, x, y);
+        }
+
+        @Override
+        public boolean canInsert(ItemStack stack) {
+            return false;
+        }
+
+        @Override
+        public boolean canTakeItems(PlayerEntity player) {
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.warehousemod.screen;
 
-import com.warehousemod.WarehouseMod;
+import com.warehousemod.manager.Warehouse;
+import com.warehousemod.manager.WarehouseManager;
 import net.minecraft.screen.NamedScreenHandlerFactory;
 import net.minecraft.screen.ScreenHandler;
 import net.minecraft.text.Text;
@@ -8,13 +9,22 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 
 public class WarehouseScreenHandlerFactory implements NamedScreenHandlerFactory {
+    private final Warehouse warehouse;
+
+    public WarehouseScreenHandlerFactory(Warehouse warehouse) {
+        this.warehouse = warehouse;
+    }
+
     @Override
     public ScreenHandler createMenu(int syncId, PlayerInventory inv, PlayerEntity player) {
-        return new WarehouseScreenHandler(syncId, inv, WarehouseMod.warehouseManager.getInventory());
+        return new WarehouseScreenHandler(syncId, inv, warehouse);
     }
 
     @Override
     public Text getDisplayName() {
-        return Text.literal("公共仓库");
+        if (WarehouseManager.DEFAULT_WAREHOUSE.equals(warehouse.getName())) {
+            return Text.literal("公共仓库");
+        }
+        return Text.literal("仓库: " + warehouse.getName());
     }
 }
\ No newline at end of file
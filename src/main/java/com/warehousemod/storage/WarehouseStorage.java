@@ -0,0 +1,149 @@
+package com.warehousemod.storage;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 仓库存储：物品种类 -> 数量
+ * 每种物品（物品 + 组件）只保存一个 ItemVariant 和一个 long 计数，不受槽位数量和堆叠上限的限制
+ * 种类按放入的先后顺序排列，只能在服务器线程上访问
+ */
+public class WarehouseStorage {
+
+    /**
+     * 存储内容变化的监听器，delta 为正表示放入，为负表示取出
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onChanged(ItemVariant variant, long delta);
+    }
+
+    private ItemVariant[] variants = new ItemVariant[64];
+    private long[] counts = new long[64];
+    private int size;
+    private long totalCount;
+    private final Object2IntOpenHashMap<ItemVariant> indexOf = new Object2IntOpenHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public WarehouseStorage() {
+        indexOf.defaultReturnValue(-1);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 物品种类数
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 所有物品的总数
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public ItemVariant getVariant(int index) {
+        return variants[index];
+    }
+
+    public long getCount(int index) {
+        return counts[index];
+    }
+
+    public long getCount(ItemVariant variant) {
+        int index = indexOf.getInt(variant);
+        return index < 0 ? 0 : counts[index];
+    }
+
+    /**
+     * 放入物品，存储没有容量上限
+     */
+    public void insert(ItemVariant variant, long amount) {
+        if (variant.isBlank() || amount <= 0) {
+            return;
+        }
+
+        int index = indexOf.getInt(variant);
+        if (index < 0) {
+            if (size == variants.length) {
+                variants = Arrays.copyOf(variants, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            index = size++;
+            variants[index] = variant;
+            counts[index] = 0;
+            indexOf.put(variant, index);
+        }
+
+        counts[index] += amount;
+        totalCount += amount;
+        notifyListeners(variant, amount);
+    }
+
+    /**
+     * 取出最多 maxAmount 个物品，返回实际取出的数量
+     */
+    public long extract(ItemVariant variant, long maxAmount) {
+        int index = indexOf.getInt(variant);
+        if (index < 0 || maxAmount <= 0) {
+            return 0;
+        }
+
+        long extracted = Math.min(maxAmount, counts[index]);
+        counts[index] -= extracted;
+        totalCount -= extracted;
+        if (counts[index] == 0) {
+            removeAt(index);
+        }
+        notifyListeners(variant, -extracted);
+        return extracted;
+    }
+
+    /**
+     * 清空存储，每种物品都会通知一次监听器
+     */
+    public void clear() {
+        while (size > 0) {
+            extract(variants[size - 1], counts[size - 1]);
+        }
+    }
+
+    private void removeAt(int index) {
+        indexOf.removeInt(variants[index]);
+        int moved = size - index - 1;
+        if (moved > 0) {
+            // 保持其余种类的顺序不变，翻页时物品不会跳动
+            System.arraycopy(variants, index + 1, variants, index, moved);
+            System.arraycopy(counts, index + 1, counts, index, moved);
+            for (int i = index; i < index + moved; i++) {
+                indexOf.put(variants[i], i);
+            }
+        }
+        size--;
+        variants[size] = null;
+        counts[size] = 0;
+    }
+
+    private void notifyListeners(ItemVariant variant, long delta) {
+        for (Listener listener : listeners) {
+            listener.onChanged(variant, delta);
+        }
+    }
+}